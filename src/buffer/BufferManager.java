@@ -17,6 +17,11 @@ public class BufferManager{
     private LinkedList<Integer> lruTracker;
     private Set<Integer> dirtyPages;
 
+    // running totals since startup, for EXPLAIN ANALYZE
+    private long hits;
+    private long misses;
+    private long pagesCreated;
+
     /**
      *  Creates a new instance of a Buffer Manager
      * @param capacity the max buffer size intended
@@ -41,9 +46,11 @@ public class BufferManager{
     public Page getPage(int pageId) throws DBException{
         // Check if data is already in RAM
         if(bufferPool.containsKey(pageId)){
+            hits++;
             updateLRU(pageId); // Marks data as recently used to avoid eviction
             return bufferPool.get(pageId);
         }
+        misses++;
         // Page not in buffer, so will need to be added to buffer
         // Make sure it fits within buffer
         if(bufferPool.size() >= maxBufferSize){
@@ -59,6 +66,25 @@ public class BufferManager{
         return newPage;
     }
 
+    /**
+     * Puts a brand new, empty page into the buffer without reading it from disk.
+     * The page starts dirty so it is written out even if nothing is added to it.
+     * @param pageId identifier of a freshly allocated page
+     * @return the empty Page
+     */
+    public Page newPage(int pageId) throws DBException{
+        discardPage(pageId);
+        if(bufferPool.size() >= maxBufferSize){
+            evictIfNeeded();
+        }
+        Page newPage = new Page(pageId);
+        pagesCreated++;
+        bufferPool.put(pageId, newPage);
+        lruTracker.addFirst(pageId);
+        dirtyPages.add(pageId);
+        return newPage;
+    }
+
     /**
      * Helper function to move a pageID that already exists within the buffer to the front
      * @param pageId Unique Page object identifier
@@ -81,6 +107,18 @@ public class BufferManager{
         }
     }
 
+    /**
+     * Drops a page from the buffer without writing it back. Must be called before
+     * a page is freed, otherwise a later reuse of the same pageId would be handed
+     * the stale cached copy.
+     * @param pageId Unique Page object identifier
+     */
+    public void discardPage(int pageId){
+        bufferPool.remove(pageId);
+        lruTracker.remove((Integer) pageId);
+        dirtyPages.remove(pageId);
+    }
+
     /**
      * Clears all collections
      * @throws DBException don't know
@@ -182,6 +220,10 @@ public class BufferManager{
      * @return byte collection representation of provided Record
      */
     private byte[] serializeRecord(Record rec){
+        // Unchanged since it was read, so the original bytes are still correct
+        if (rec.isEncoded()){
+            return rec.getEncoded();
+        }
         // Extract attributes from given record
         List<Value> attributes = rec.getAttributes();
         // counter for number of bytes needed to store complete record in a byte[]
@@ -245,65 +287,146 @@ public class BufferManager{
     }
 
     /**
-     * Converts a collection of bytes into a Record object using a given offset
+     * Wraps the bytes of a record without decoding any of its attributes.
+     * Columns are decoded by the Record on first access.
      * @param data byte collection
      * @param offset int
      * @return Record object
      */
     private Record deserializeRecord(byte[] data, int offset){
-        Record rec = new Record();
-        ByteBuffer bufferz = ByteBuffer.wrap(data);
-        bufferz.position(offset);
+        return new Record(data, offset);
+    }
 
-        int numAttributes = bufferz.getInt();
+    /**
+     * Walks the type bytes of a serialized record and finds where each attribute starts.
+     * Nothing is decoded, string lengths are only skipped over.
+     * @param data byte collection
+     * @param offset where the record starts
+     * @return start position of every attribute, followed by the end position of the record
+     */
+    public static int[] fieldOffsets(byte[] data, int offset){
+        ByteBuffer bufferz = ByteBuffer.wrap(data);
+        int numAttributes = bufferz.getInt(offset);
+        int[] offsets = new int[numAttributes + 1];
+        int pos = offset + 4;
 
-        // Iterate through number of attributes
         for (int i = 0; i < numAttributes; i++){
-            // The byte buffer contains a number indicating the type of the attribute.
-            byte type = bufferz.get();
-
-            if (type == 0){
-                rec.addAttribute(new Value(null));
-            }
-            else if (type == 1){
-                int val = bufferz.getInt();
-                rec.addAttribute(new Value(val));
+            offsets[i] = pos;
+            byte type = data[pos];
+            pos = pos + 1;
+            if (type == 1){
+                pos = pos + 4;
             }
             else if (type == 2){
-                double val = bufferz.getDouble();
-                rec.addAttribute(new Value(val));
+                pos = pos + 8;
             }
             else if (type == 3){
-                int len = bufferz.getInt();
-                byte[] strBytes = new byte[len];
-                for (int j = 0; j < len; j++){
-                    strBytes[j] = bufferz.get();
-                }
-                String val = new String(strBytes);
-                rec.addAttribute(new Value(val));
+                pos = pos + 4 + bufferz.getInt(pos);
             }
             else if (type == 4){
-                boolean val = bufferz.get() == 1;
-                rec.addAttribute(new Value(val));
+                pos = pos + 1;
             }
         }
-        return rec;
+        offsets[numAttributes] = pos;
+        return offsets;
+    }
+
+    /**
+     * Decodes a single attribute of a serialized record
+     * @param data byte collection
+     * @param pos position of the attribute's type byte
+     * @return the decoded Value
+     */
+    public static Value decodeField(byte[] data, int pos){
+        ByteBuffer bufferz = ByteBuffer.wrap(data);
+        // The byte buffer contains a number indicating the type of the attribute.
+        byte type = data[pos];
+
+        if (type == 1){
+            return new Value(bufferz.getInt(pos + 1));
+        }
+        else if (type == 2){
+            return new Value(bufferz.getDouble(pos + 1));
+        }
+        else if (type == 3){
+            int len = bufferz.getInt(pos + 1);
+            return new Value(new String(data, pos + 5, len));
+        }
+        else if (type == 4){
+            return new Value(data[pos + 1] == 1);
+        }
+        return new Value(null);
     }
 
     public int recordSizeBytes(Record rec) {
+        if (rec.isEncoded()) {
+            return rec.encodedLength();
+        }
         return serializeRecord(rec).length;
     }
 
+    /**
+     * @param page a page
+     * @return bytes the page's records take up once serialized, header included
+     */
+    public int usedBytes(Page page) {
+        int dataBytes = 0;
+        for (Record r : page.getRecords()) {
+            dataBytes += recordSizeBytes(r);
+        }
+        return pageBytesNeeded(page.size(), dataBytes);
+    }
+
     public boolean canFitRecord(Page page, Record newRec) {
         int k = page.getRecords().size();
-        int headerAfter = 4 + 4 * (k + 1); // numRecords + offsets
 
         int dataBytes = 0;
         for (Record r : page.getRecords()) {
-            dataBytes += serializeRecord(r).length;
+            dataBytes += recordSizeBytes(r);
         }
-        dataBytes += serializeRecord(newRec).length;
+        dataBytes += recordSizeBytes(newRec);
+
+        return pageBytesNeeded(k + 1, dataBytes) <= pageSize;
+    }
+
+    /**
+     * @param numRecords number of records on the page
+     * @param dataBytes total serialized size of those records
+     * @return bytes the page layout needs for them, header and offsets included
+     */
+    public static int pageBytesNeeded(int numRecords, int dataBytes) {
+        return 4 + 4 * numRecords + dataBytes; // numRecords + offsets + data
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
 
-        return headerAfter + dataBytes <= pageSize;
+    /**
+     * @return page requests answered from the buffer since startup
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return page requests since startup that had to read the page from disk
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return new pages started with newPage() since startup
+     */
+    public long getPagesCreated() {
+        return pagesCreated;
+    }
+
+    /**
+     * @return the most pages the buffer holds at once
+     */
+    public int getCapacity() {
+        return maxBufferSize;
     }
 }
\ No newline at end of file
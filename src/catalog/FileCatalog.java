@@ -1,6 +1,8 @@
 package catalog;
 
 import buffer.BufferManager;
+import index.BloomFilter;
+import index.SecondaryIndex;
 import model.*;
 import storage.StorageManager;
 import util.DBException;
@@ -11,10 +13,26 @@ import java.util.*;
 /**
  * Catalog implementation:
  * - Persists table schemas AND the table's pageIds
+ * - Persists the fence keys (min/max primary key) of every page
+ * - Persists the root page of each table's primary key index (-1 if none)
+ * - Persists each table's fill factor and merge threshold
+ * - Persists each table's CREATE INDEX indexes (name, attribute, type, root page)
+ * - Persists the zone map (per attribute min, max and null count) of every page
+ * - Persists the Bloom filter over each table's primary keys, if it has been built
+ * - Persists the statistics from each table's last ANALYZE, if it has had one
  * - Reloads them on startup
+ * The file starts with CATALOG_MAGIC and a format version. A file without
+ * them is from before the version was written, and holds only the schemas
+ * and pageIds; everything else is given its default when it is loaded.
  */
 public class FileCatalog implements Catalog {
 
+    // Negative, so it can't be mistaken for the table count older files start with
+    private static final int CATALOG_MAGIC = 0xCA7A1060;
+    // 0 is the unversioned format; 1 added everything after the pageIds;
+    // 2 added the merge threshold
+    private static final int CATALOG_VERSION = 2;
+
     private final File catalogFile;
     private final Map<String, Table> tables = new HashMap<>();
 
@@ -33,6 +51,14 @@ public class FileCatalog implements Catalog {
         try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(catalogFile)))) {
 
             int tableCount = in.readInt();
+            int version = 0;
+            if (tableCount == CATALOG_MAGIC) {
+                version = in.readInt();
+                tableCount = in.readInt();
+            }
+            if (version < 0 || version > CATALOG_VERSION) {
+                throw new DBException("Unknown catalog version " + version + " in: " + catalogFile.getName());
+            }
 
             for (int t = 0; t < tableCount; t++) {
                 String tableName = in.readUTF();
@@ -52,13 +78,67 @@ public class FileCatalog implements Catalog {
 
                 Schema schema = new Schema(attrs);
 
+                if (version == 0) {
+                    tables.put(tableName.toLowerCase(), readUnversioned(in, tableName, schema));
+                    continue;
+                }
+
                 int pageCount = in.readInt();
                 List<Integer> pageIds = new ArrayList<>();
+                List<Value> minKeys = new ArrayList<>();
+                List<Value> maxKeys = new ArrayList<>();
                 for (int i = 0; i < pageCount; i++) {
                     pageIds.add(in.readInt());
+                    minKeys.add(readKey(in));
+                    maxKeys.add(readKey(in));
                 }
 
-                Table table = new TableSchema(tableName, schema, pageIds);
+                TableSchema table = new TableSchema(tableName, schema, pageIds, minKeys, maxKeys);
+                table.setIndexRoot(in.readInt());
+                table.setFillFactor(in.readInt());
+                if (version >= 2) {
+                    table.setMergeThreshold(in.readInt());
+                }
+
+                int indexCount = in.readInt();
+                for (int i = 0; i < indexCount; i++) {
+                    table.addSecondaryIndex(new SecondaryIndex(in.readUTF(), in.readUTF(), in.readUTF(), in.readInt()));
+                }
+
+                for (int pid : pageIds) {
+                    if (!in.readBoolean()) continue;
+                    Object[] min = new Object[attrCount];
+                    Object[] max = new Object[attrCount];
+                    int[] nulls = new int[attrCount];
+                    for (int i = 0; i < attrCount; i++) {
+                        min[i] = raw(readKey(in));
+                        max[i] = raw(readKey(in));
+                        nulls[i] = in.readInt();
+                    }
+                    table.setZone(pid, new ZoneMap(min, max, nulls));
+                }
+
+                if (in.readBoolean()) {
+                    table.setKeyFilter(BloomFilter.readFrom(in));
+                }
+
+                if (in.readBoolean()) {
+                    long rowCount = in.readLong();
+                    int statsPages = in.readInt();
+                    ColumnStats[] columns = new ColumnStats[attrCount];
+                    for (int i = 0; i < attrCount; i++) {
+                        long distinct = in.readLong();
+                        double nullFraction = in.readDouble();
+                        Object min = raw(readKey(in));
+                        Object max = raw(readKey(in));
+                        Object[] bounds = new Object[in.readInt()];
+                        for (int b = 0; b < bounds.length; b++) {
+                            bounds[b] = raw(readKey(in));
+                        }
+                        columns[i] = new ColumnStats(distinct, nullFraction, min, max, bounds);
+                    }
+                    table.setStats(new TableStats(rowCount, statsPages, columns));
+                }
 
                 tables.put(tableName.toLowerCase(), table);
             }
@@ -72,6 +152,8 @@ public class FileCatalog implements Catalog {
     public void save() throws DBException {
         try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(catalogFile)))) {
 
+            out.writeInt(CATALOG_MAGIC);
+            out.writeInt(CATALOG_VERSION);
             out.writeInt(tables.size());
 
             for (Table table : tables.values()) {
@@ -91,9 +173,64 @@ public class FileCatalog implements Catalog {
                 if (table instanceof TableSchema ts) {
                     List<Integer> pids = ts.getPageIds();
                     out.writeInt(pids.size());
-                    for (int pid : pids) out.writeInt(pid);
+                    for (int i = 0; i < pids.size(); i++) {
+                        out.writeInt(pids.get(i));
+                        writeKey(out, ts.getMinKeys().get(i));
+                        writeKey(out, ts.getMaxKeys().get(i));
+                    }
+                    out.writeInt(ts.getIndexRoot());
+                    out.writeInt(ts.getFillFactor());
+                    out.writeInt(ts.getMergeThreshold());
+
+                    out.writeInt(ts.getSecondaryIndexes().size());
+                    for (SecondaryIndex si : ts.getSecondaryIndexes()) {
+                        out.writeUTF(si.getName());
+                        out.writeUTF(si.getAttribute());
+                        out.writeUTF(si.getType());
+                        out.writeInt(si.getRootPid());
+                    }
+
+                    for (int pid : pids) {
+                        ZoneMap zone = ts.getZones().get(pid);
+                        out.writeBoolean(zone != null);
+                        if (zone == null) continue;
+                        for (int i = 0; i < zone.size(); i++) {
+                            writeKey(out, value(zone.getMin(i)));
+                            writeKey(out, value(zone.getMax(i)));
+                            out.writeInt(zone.getNullCount(i));
+                        }
+                    }
+
+                    out.writeBoolean(ts.getKeyFilter() != null);
+                    if (ts.getKeyFilter() != null) {
+                        ts.getKeyFilter().writeTo(out);
+                    }
+
+                    TableStats stats = ts.getStats();
+                    out.writeBoolean(stats != null);
+                    if (stats != null) {
+                        out.writeLong(stats.getRowCount());
+                        out.writeInt(stats.getPageCount());
+                        for (int i = 0; i < stats.size(); i++) {
+                            ColumnStats column = stats.getColumn(i);
+                            out.writeLong(column.getDistinct());
+                            out.writeDouble(column.getNullFraction());
+                            writeKey(out, value(column.getMin()));
+                            writeKey(out, value(column.getMax()));
+                            out.writeInt(column.getBounds().length);
+                            for (Object bound : column.getBounds()) {
+                                writeKey(out, value(bound));
+                            }
+                        }
+                    }
                 } else {
                     out.writeInt(0);
+                    out.writeInt(-1);
+                    out.writeInt(TableSchema.DEFAULT_FILL_FACTOR);
+                    out.writeInt(TableSchema.DEFAULT_MERGE_THRESHOLD);
+                    out.writeInt(0);
+                    out.writeBoolean(false);
+                    out.writeBoolean(false);
                 }
             }
 
@@ -102,6 +239,72 @@ public class FileCatalog implements Catalog {
         }
     }
 
+    /**
+     * Reads the rest of a table from a catalog without a version, which had only
+     * the pageIds. Its pages were written before fill factors, so they are taken
+     * as full. It has no indexes, Bloom filter or statistics, and its fences and
+     * zone maps are rebuilt from the pages by rebuildPageSummaries() once bound.
+     */
+    private TableSchema readUnversioned(DataInputStream in, String tableName, Schema schema)
+            throws IOException, DBException {
+        int pageCount = in.readInt();
+        List<Integer> pageIds = new ArrayList<>();
+        for (int i = 0; i < pageCount; i++) {
+            pageIds.add(in.readInt());
+        }
+        TableSchema table = new TableSchema(tableName, schema, pageIds);
+        table.setFillFactor(100);
+        return table;
+    }
+
+    /**
+     * Writes a fence key as a type tag followed by the value.
+     * Tag -1 means no key (empty page), 0 is a NULL key, the rest follow the page format.
+     */
+    private void writeKey(DataOutputStream out, Value key) throws IOException {
+        if (key == null) {
+            out.writeByte(-1);
+            return;
+        }
+        Object raw = key.getRaw();
+        if (raw instanceof Integer i) {
+            out.writeByte(1);
+            out.writeInt(i);
+        } else if (raw instanceof Double d) {
+            out.writeByte(2);
+            out.writeDouble(d);
+        } else if (raw instanceof String str) {
+            out.writeByte(3);
+            out.writeUTF(str);
+        } else if (raw instanceof Boolean b) {
+            out.writeByte(4);
+            out.writeBoolean(b);
+        } else {
+            out.writeByte(0);
+        }
+    }
+
+    private Value readKey(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case -1 -> null;
+            case 1 -> new Value(in.readInt());
+            case 2 -> new Value(in.readDouble());
+            case 3 -> new Value(in.readUTF());
+            case 4 -> new Value(in.readBoolean());
+            default -> new Value(null);
+        };
+    }
+
+    private Object raw(Value v) {
+        return (v == null) ? null : v.getRaw();
+    }
+
+    // a missing value (null) is written as "no key", not as a NULL key
+    private Value value(Object raw) {
+        return (raw == null) ? null : new Value(raw);
+    }
+
     public void bind(StorageManager storage, BufferManager buffer) {
         for (Table t : tables.values()) {
             if (t instanceof TableSchema ts) {
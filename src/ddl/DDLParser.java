@@ -2,6 +2,7 @@ package ddl;
 
 import buffer.BufferManager;
 import catalog.Catalog;
+import index.SecondaryIndex;
 import model.TableSchema;
 import model.*;
 import storage.StorageManager;
@@ -16,11 +17,17 @@ public class DDLParser implements DDLProcessor {
     private final Catalog catalog;
     private final StorageManager storage;
     private final BufferManager buffer;
+    private final boolean indexing;
 
     public DDLParser(Catalog catalog, StorageManager storage, BufferManager buffer) {
+        this(catalog, storage, buffer, false);
+    }
+
+    public DDLParser(Catalog catalog, StorageManager storage, BufferManager buffer, boolean indexing) {
         this.catalog = catalog;
         this.storage = storage;
         this.buffer = buffer;
+        this.indexing = indexing;
     }
 
     @Override
@@ -44,6 +51,11 @@ public class DDLParser implements DDLProcessor {
 
         Schema schema = new Schema(attrs);
         TableSchema table = new TableSchema(tableName, schema, storage, buffer);
+        table.setFillFactor(c.getFillFactor());
+        table.setMergeThreshold(c.getMergeThreshold());
+        if (indexing) {
+            table.enableIndex();
+        }
 
         catalog.addTable(table);
 
@@ -61,6 +73,10 @@ public class DDLParser implements DDLProcessor {
         Table table = catalog.getTable(tableName);
         List<Integer> pageIds = table.getPageIds();
 
+        if (table instanceof TableSchema ts) {
+            ts.dropIndex();
+            ts.dropSecondaryIndexes();
+        }
         buffer.flushAll();
 
         for (int pageId : pageIds) {
@@ -78,6 +94,10 @@ public class DDLParser implements DDLProcessor {
         Table table = catalog.getTable(tableName);
         List<Integer> pageIds = table.getPageIds();
 
+        if (table instanceof TableSchema ts) {
+            ts.dropIndex();
+            ts.dropSecondaryIndexes();
+        }
         buffer.flushAll();
 
         for (int pageId : pageIds) {
@@ -118,6 +138,13 @@ public class DDLParser implements DDLProcessor {
         Schema newSchema = new Schema(newAttrs);
 
         TableSchema newTable = new TableSchema(tableName, newSchema, storage, buffer);
+        if (oldT instanceof TableSchema oldTs) {
+            newTable.setFillFactor(oldTs.getFillFactor());
+            newTable.setMergeThreshold(oldTs.getMergeThreshold());
+        }
+        if (indexing) {
+            newTable.enableIndex();
+        }
 
         Object defaultRaw = a.hasDefaultValue() ? a.getDefaultValue() : null;
         Value defaultVal = new Value(defaultRaw);
@@ -131,6 +158,16 @@ public class DDLParser implements DDLProcessor {
             rNew.addAttribute(defaultVal);
             newTable.insert(rNew);
         }
+        if (oldT instanceof TableSchema oldTs) {
+            // the same indexes on the new table, minus any on a dropped attribute
+            for (SecondaryIndex si : oldTs.getSecondaryIndexes()) {
+                if (newSchema.hasAttribute(si.getAttribute())) {
+                    newTable.createIndex(si.getName(), si.getAttribute(), si.getType());
+                }
+            }
+            oldTs.dropIndex();
+            oldTs.dropSecondaryIndexes();
+        }
 
         catalog.removeTable(tableName);
         catalog.addTable(newTable);
@@ -172,6 +209,13 @@ public class DDLParser implements DDLProcessor {
         Schema newSchema = new Schema(newAttrs);
 
         TableSchema newTable = new TableSchema(tableName, newSchema, storage, buffer);
+        if (oldT instanceof TableSchema oldTs) {
+            newTable.setFillFactor(oldTs.getFillFactor());
+            newTable.setMergeThreshold(oldTs.getMergeThreshold());
+        }
+        if (indexing) {
+            newTable.enableIndex();
+        }
 
         // copy records skipping dropped value
         for (model.Record rOld : oldT.scan()) {
@@ -182,7 +226,18 @@ public class DDLParser implements DDLProcessor {
             }
             newTable.insert(rNew);
         }
+        if (oldT instanceof TableSchema oldTs) {
+            // the same indexes on the new table, minus any on a dropped attribute
+            for (SecondaryIndex si : oldTs.getSecondaryIndexes()) {
+                if (newSchema.hasAttribute(si.getAttribute())) {
+                    newTable.createIndex(si.getName(), si.getAttribute(), si.getType());
+                }
+            }
+            oldTs.dropIndex();
+            oldTs.dropSecondaryIndexes();
+        }
         for (int pageId : oldT.getPageIds()) {
+            buffer.discardPage(pageId);
             storage.freePage(pageId);
         }
 
@@ -191,4 +246,41 @@ public class DDLParser implements DDLProcessor {
 
         return Result.ok("Table altered successfully");
     }
+    @Override
+    public Result createIndex(CreateIndexCommand c) throws DBException {
+        String tableName = c.getTableName();
+        String attrName = c.getAttributeName();
+
+        if (!catalog.exists(tableName)) {
+            throw new DBException("Table '" + tableName + "' does not exist.");
+        }
+        if (!(catalog.getTable(tableName) instanceof TableSchema ts)) {
+            throw new DBException("Unsupported table type");
+        }
+        if (!ts.schema().hasAttribute(attrName)) {
+            throw new DBException("Attribute '" + attrName
+                    + "' does not exist in table '" + tableName + "'.");
+        }
+
+        // index names are unique across the database
+        for (Table t : catalog.getTables().values()) {
+            if (!(t instanceof TableSchema other)) continue;
+            for (SecondaryIndex si : other.getSecondaryIndexes()) {
+                if (si.getName().equals(c.getIndexName())) {
+                    throw new DBException("Index '" + c.getIndexName() + "' already exists.");
+                }
+            }
+        }
+
+        // bitmaps only pay off over a handful of distinct values
+        if (c.getIndexType().equals(SecondaryIndex.BITMAP)) {
+            Datatype type = ts.schema().getAttributes().get(ts.schema().getAttributeIndex(attrName)).getType();
+            if (type != Datatype.BOOLEAN && type != Datatype.CHAR) {
+                throw new DBException("BITMAP indexes are only supported on BOOLEAN and CHAR attributes");
+            }
+        }
+
+        ts.createIndex(c.getIndexName(), attrName, c.getIndexType());
+        return Result.ok("Index created successfully");
+    }
 }
\ No newline at end of file
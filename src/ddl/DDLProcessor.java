@@ -8,4 +8,5 @@ public interface DDLProcessor {
     Result dropTable(DropTableCommand cmd) throws DBException;
     Result alterTableAdd(AlterTableAddCommand cmd) throws DBException;
     Result alterTableDrop(AlterTableDropCommand cmd) throws DBException;
+    Result createIndex(CreateIndexCommand cmd) throws DBException;
 }
\ No newline at end of file
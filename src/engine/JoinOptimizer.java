@@ -0,0 +1,496 @@
+package engine;
+
+import buffer.BufferManager;
+import exec.BlockNestedLoopJoinOperator;
+import exec.HashJoinOperator;
+import exec.MergeJoinOperator;
+import exec.Operator;
+import exec.ProfiledOperator;
+import exec.ProductOperator;
+import exec.ProjectOperator;
+import exec.SortOperator;
+import model.Attribute;
+import model.ColumnStats;
+import model.Datatype;
+import model.Schema;
+import model.TableStats;
+import parser.ANDTree;
+import parser.AttrNode;
+import parser.IWhereTree;
+import parser.ORTree;
+import parser.RelopNode;
+import parser.ValueNode;
+import parser.isNULLNode;
+import storage.StorageManager;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the order to join the tables of a SELECT in and how to join each one
+ * on: a nested loop, a block nested loop, a hash join or a merge join. Plans
+ * are left deep, each join adding one table to the ones joined so far, and
+ * are compared by the pages they are expected to read and write.
+ * <br>
+ * Tables that have been through ANALYZE are estimated from their statistics:
+ * the row count, 1/distinct values for ==, the histogram for ranges, the
+ * null fraction for IS NULL, and for a join on equal values one match per
+ * distinct value of the side with more of them. Other tables start from
+ * their page count after their own WHERE conditions have pruned pages and
+ * the records a page holds, with textbook guesses for how many records a
+ * condition keeps: a tenth for == and IS NULL, a third for a range, and one
+ * join match per record of the bigger side.
+ * <br>
+ * All join orders are tried (dynamic programming over sets of tables) for up
+ * to MAX_REORDERED tables; past that the tables are joined in FROM order and
+ * only the algorithms are chosen. Whatever the order, the plan returns
+ * columns in FROM order, so the caller sees the same records either way.
+ */
+class JoinOptimizer {
+
+    private static final int MAX_REORDERED = 10;
+
+    /**
+     * A table of the FROM list, scanned with its own WHERE conditions applied
+     */
+    static class Input {
+        final Operator scan;
+        final long pages;
+        final IWhereTree conditions;
+        final int sortedOn;
+        final TableStats stats;
+
+        /**
+         * @param pages pages the scan reads
+         * @param conditions the table's own conditions, null if it has none
+         * @param sortedOn attribute the scan returns records sorted on, or -1
+         * @param stats the table's statistics, null if it was never analyzed
+         */
+        Input(Operator scan, long pages, IWhereTree conditions, int sortedOn, TableStats stats) {
+            this.scan = scan;
+            this.pages = pages;
+            this.conditions = conditions;
+            this.sortedOn = sortedOn;
+            this.stats = stats;
+        }
+    }
+
+    enum Method { NESTED_LOOP, BLOCK_NESTED_LOOP, HASH, MERGE }
+
+    // a == b between attributes of two tables, columns numbered across the FROM list
+    private static class EquiJoin {
+        final int leftColumn;
+        final int rightColumn;
+
+        EquiJoin(int leftColumn, int rightColumn) {
+            this.leftColumn = leftColumn;
+            this.rightColumn = rightColumn;
+        }
+    }
+
+    // a condition spanning tables, applied to the estimate once they are all joined
+    private static class Condition {
+        final int tables;
+        final EquiJoin equi;
+        final double selectivity;
+
+        Condition(int tables, EquiJoin equi, double selectivity) {
+            this.tables = tables;
+            this.equi = equi;
+            this.selectivity = selectivity;
+        }
+    }
+
+    // the best way found to join a set of tables
+    private static class Plan {
+        final int tables;     // bit per table
+        final Plan left;      // null for a single table
+        final int table;      // the table this step adds
+        final Method method;
+        final EquiJoin key;
+        final boolean buildLeft;
+        final double rows;
+        final double pages;
+        final double cost;
+        final int sortedOn;   // column records come out sorted on, or -1
+
+        Plan(int tables, Plan left, int table, Method method, EquiJoin key, boolean buildLeft,
+             double rows, double pages, double cost, int sortedOn) {
+            this.tables = tables;
+            this.left = left;
+            this.table = table;
+            this.method = method;
+            this.key = key;
+            this.buildLeft = buildLeft;
+            this.rows = rows;
+            this.pages = pages;
+            this.cost = cost;
+            this.sortedOn = sortedOn;
+        }
+    }
+
+    private final List<Input> inputs;
+    private final StorageManager storage;
+    private final BufferManager buffer;
+    private final boolean profile;
+    private final int[] firstColumn;   // position of each table's first column in FROM order
+    private final double[] rows;       // estimated records per table
+    private final double[] width;      // estimated bytes per record of each table
+    private final List<Condition> conditions = new ArrayList<>();
+    private Plan best;
+
+    /**
+     * @param rest the WHERE conditions spanning tables, named as in the tables' FROM order schema
+     * @param profile true to wrap the operators built in ProfiledOperators
+     */
+    JoinOptimizer(List<Input> inputs, IWhereTree rest, StorageManager storage, BufferManager buffer, boolean profile) {
+        this.inputs = inputs;
+        this.storage = storage;
+        this.buffer = buffer;
+        this.profile = profile;
+
+        int n = inputs.size();
+        firstColumn = new int[n + 1];
+        rows = new double[n];
+        width = new double[n];
+        for (int t = 0; t < n; t++) {
+            Input in = inputs.get(t);
+            Schema schema = in.scan.schema();
+            firstColumn[t + 1] = firstColumn[t] + schema.getAttributes().size();
+            width[t] = recordWidth(schema);
+            if (in.stats != null) {
+                rows[t] = Math.max(1, in.stats.getRowCount() * selectivity(in.conditions, in.stats, schema));
+            } else {
+                double perPage = Math.max(1, buffer.getPageSize() / width[t]);
+                rows[t] = Math.max(1, in.pages * perPage * selectivity(in.conditions, null, schema));
+            }
+        }
+
+        Schema combined = fromSchema();
+        for (IWhereTree condition : IWhereTree.conjuncts(rest)) {
+            int tables = 0;
+            for (AttrNode attr : IWhereTree.attributeNodes(condition)) {
+                int i = attr.getIndex(combined);
+                if (i != -1) tables |= 1 << tableOf(i);
+            }
+            EquiJoin equi = equiJoin(condition, combined);
+            double selectivity = (equi == null) ? selectivity(condition, null, combined)
+                    : 1 / Math.max(distinct(equi.leftColumn), distinct(equi.rightColumn));
+            conditions.add(new Condition(tables, equi, selectivity));
+        }
+    }
+
+    /**
+     * @return the schema of all the tables' columns in FROM order
+     */
+    Schema fromSchema() {
+        Schema combined = inputs.get(0).scan.schema();
+        for (int t = 1; t < inputs.size(); t++) {
+            combined = ProductOperator.combine(combined, inputs.get(t).scan.schema());
+        }
+        return combined;
+    }
+
+    /**
+     * Works out the cheapest plan and builds its operators
+     * @return the root operator, returning columns in FROM order
+     */
+    Operator plan() throws DBException {
+        int n = inputs.size();
+        if (n > MAX_REORDERED) {
+            // too many tables to try every order: add them in FROM order
+            best = leaf(0);
+            for (int t = 1; t < n; t++) {
+                best = cheapestJoin(best, t);
+            }
+        } else {
+            Plan[] bestFor = new Plan[1 << n];
+            for (int t = 0; t < n; t++) {
+                bestFor[1 << t] = leaf(t);
+            }
+            // sets are visited in increasing order, so every subset is done before the sets it is part of
+            for (int set = 1; set < bestFor.length; set++) {
+                Plan left = bestFor[set];
+                if (left == null) continue;
+                for (int t = 0; t < n; t++) {
+                    if ((set & (1 << t)) != 0) continue;
+                    Plan joined = cheapestJoin(left, t);
+                    int next = set | (1 << t);
+                    if (bestFor[next] == null || joined.cost < bestFor[next].cost) {
+                        bestFor[next] = joined;
+                    }
+                }
+            }
+            best = bestFor[bestFor.length - 1];
+        }
+
+        Operator root = build(best);
+        List<Integer> order = joinOrder(best);
+        int[] columns = new int[firstColumn[n]];
+        boolean reordered = false;
+        for (int t = 0; t < n; t++) {
+            int offset = offsetOf(order, t);
+            for (int c = firstColumn[t]; c < firstColumn[t + 1]; c++) {
+                columns[c] = offset + c - firstColumn[t];
+                reordered |= columns[c] != c;
+            }
+        }
+        return reordered ? ProfiledOperator.wrap(new ProjectOperator(root, columns), profile, buffer) : root;
+    }
+
+    /**
+     * @return the FROM order column the planned records come out sorted on, or -1
+     */
+    int sortedOn() {
+        return best.sortedOn;
+    }
+
+    private Plan leaf(int t) {
+        Input in = inputs.get(t);
+        return new Plan(1 << t, null, t, null, null, false, rows[t], in.pages, in.pages,
+                (in.sortedOn == -1) ? -1 : firstColumn[t] + in.sortedOn);
+    }
+
+    private Plan cheapestJoin(Plan left, int t) {
+        Input right = inputs.get(t);
+        int tables = left.tables | (1 << t);
+
+        double out = left.rows * rows[t];
+        EquiJoin key = null;
+        for (Condition c : conditions) {
+            if ((c.tables & tables) == c.tables && (c.tables & left.tables) != c.tables && (c.tables & (1 << t)) != 0) {
+                out *= c.selectivity;
+                if (key == null && c.equi != null) key = oriented(c.equi, left.tables);
+            }
+        }
+        out = Math.max(1, out);
+        double outPages = Math.max(1, out * (rowWidth(left) + width[t]) / buffer.getPageSize());
+
+        int memory = Math.max(1, buffer.getCapacity() - 2);
+        double l = Math.max(1, left.pages);
+        double r = Math.max(1, right.pages);
+
+        Plan cheapest = new Plan(tables, left, t, Method.NESTED_LOOP, null, false, out, outPages,
+                left.cost + left.rows * r, left.sortedOn);
+        double blockCost = left.cost + Math.ceil(l / memory) * r;
+        if (blockCost < cheapest.cost) {
+            cheapest = new Plan(tables, left, t, Method.BLOCK_NESTED_LOOP, null, false, out, outPages, blockCost, -1);
+        }
+        if (key != null) {
+            // partitioning writes both inputs out and reads them back
+            double hashCost = left.cost + r + ((Math.min(l, r) <= memory) ? 0 : 2 * (l + r));
+            if (hashCost < cheapest.cost) {
+                cheapest = new Plan(tables, left, t, Method.HASH, key, l <= r, out, outPages, hashCost, -1);
+            }
+            int rightSorted = (right.sortedOn == -1) ? -1 : firstColumn[t] + right.sortedOn;
+            double mergeCost = left.cost + r
+                    + ((left.sortedOn == key.leftColumn) ? 0 : sortCost(l))
+                    + ((rightSorted == key.rightColumn) ? 0 : sortCost(r));
+            if (mergeCost < cheapest.cost) {
+                cheapest = new Plan(tables, left, t, Method.MERGE, key, false, out, outPages, mergeCost, key.leftColumn);
+            }
+        }
+        return cheapest;
+    }
+
+    /**
+     * SortOperator sorts input that fits in memory there. Otherwise it writes
+     * runs about twice the size of memory and reads them back for the last
+     * merge, and every merge pass before that reads and writes everything again.
+     */
+    private double sortCost(double pages) {
+        int memory = Math.max(1, buffer.getCapacity() - 2);
+        if (pages <= memory) return 0;
+        int fanIn = Math.max(2, buffer.getCapacity() - 1);
+        double runs = Math.ceil(pages / (2.0 * memory));
+        double passes = Math.max(1, Math.ceil(Math.log(runs) / Math.log(fanIn)));
+        return 2 * pages * passes;
+    }
+
+    private Operator build(Plan plan) throws DBException {
+        Operator right = inputs.get(plan.table).scan;
+        if (plan.left == null) return right;
+        return ProfiledOperator.wrap(join(plan, build(plan.left), right), profile, buffer);
+    }
+
+    private Operator join(Plan plan, Operator left, Operator right) throws DBException {
+        switch (plan.method) {
+            case NESTED_LOOP:
+                return new ProductOperator(left, right);
+            case BLOCK_NESTED_LOOP:
+                return new BlockNestedLoopJoinOperator(left, right, buffer);
+            default:
+                break;
+        }
+
+        int leftKey = offsetOf(joinOrder(plan.left), tableOf(plan.key.leftColumn))
+                + plan.key.leftColumn - firstColumn[tableOf(plan.key.leftColumn)];
+        int rightKey = plan.key.rightColumn - firstColumn[plan.table];
+        if (plan.method == Method.HASH) {
+            return new HashJoinOperator(left, right, leftKey, rightKey, plan.buildLeft, storage, buffer);
+        }
+        Input in = inputs.get(plan.table);
+        if (plan.left.sortedOn != plan.key.leftColumn) {
+            left = ProfiledOperator.wrap(new SortOperator(left, leftKey, storage, buffer), profile, buffer);
+        }
+        if (in.sortedOn != rightKey) {
+            right = ProfiledOperator.wrap(new SortOperator(right, rightKey, storage, buffer), profile, buffer);
+        }
+        return new MergeJoinOperator(left, right, leftKey, rightKey);
+    }
+
+    /**
+     * @return the tables of a plan in the order they were joined
+     */
+    private static List<Integer> joinOrder(Plan plan) {
+        List<Integer> order = (plan.left == null) ? new ArrayList<>() : joinOrder(plan.left);
+        order.add(plan.table);
+        return order;
+    }
+
+    /**
+     * @return where a table's first column is in the records of a join order
+     */
+    private int offsetOf(List<Integer> order, int table) {
+        int offset = 0;
+        for (int t : order) {
+            if (t == table) return offset;
+            offset += firstColumn[t + 1] - firstColumn[t];
+        }
+        return -1;
+    }
+
+    /**
+     * @return distinct values of a column, or the table's estimated records if it was never analyzed
+     */
+    private double distinct(int column) {
+        int t = tableOf(column);
+        TableStats stats = inputs.get(t).stats;
+        return (stats == null) ? rows[t] : Math.max(1, stats.getColumn(column - firstColumn[t]).getDistinct());
+    }
+
+    private int tableOf(int column) {
+        int t = 0;
+        while (column >= firstColumn[t + 1]) t++;
+        return t;
+    }
+
+    private double rowWidth(Plan plan) {
+        double w = 0;
+        for (int t : joinOrder(plan)) {
+            w += width[t];
+        }
+        return w;
+    }
+
+    // the join with its left column among the tables already joined
+    private EquiJoin oriented(EquiJoin equi, int leftTables) {
+        return ((leftTables & (1 << tableOf(equi.leftColumn))) != 0) ? equi
+                : new EquiJoin(equi.rightColumn, equi.leftColumn);
+    }
+
+    /**
+     * @return the condition as an equality between attributes of two tables
+     * that can be hashed or merged on, or null if it isn't one
+     */
+    private EquiJoin equiJoin(IWhereTree condition, Schema combined) {
+        if (!(condition instanceof RelopNode relop) || !relop.getOperator().equals("==")) return null;
+        if (!(relop.getLeft() instanceof AttrNode a) || !(relop.getRight() instanceof AttrNode b)) return null;
+        int i = a.getIndex(combined);
+        int j = b.getIndex(combined);
+        if (i == -1 || j == -1 || tableOf(i) == tableOf(j)) return null;
+        // comparing across types is an error the filter reports, a join would quietly match nothing
+        return joinable(combined.getAttributes().get(i).getType(), combined.getAttributes().get(j).getType())
+                ? new EquiJoin(i, j) : null;
+    }
+
+    private static boolean joinable(Datatype a, Datatype b) {
+        boolean aText = a == Datatype.CHAR || a == Datatype.VARCHAR;
+        boolean bText = b == Datatype.CHAR || b == Datatype.VARCHAR;
+        return a == b || (aText && bText);
+    }
+
+    /**
+     * @param stats statistics of the table the condition is on, or null for textbook guesses
+     * @return the estimated fraction of records a condition keeps
+     */
+    static double selectivity(IWhereTree condition, TableStats stats, Schema schema) {
+        if (condition == null) return 1;
+        if (condition instanceof ANDTree and) {
+            return selectivity(and.getLeft(), stats, schema) * selectivity(and.getRight(), stats, schema);
+        }
+        if (condition instanceof ORTree or) {
+            double l = selectivity(or.getLeft(), stats, schema);
+            double r = selectivity(or.getRight(), stats, schema);
+            return l + r - l * r;
+        }
+        if (condition instanceof isNULLNode isNull) {
+            if (stats != null && isNull.getOperand() instanceof AttrNode attr && attr.getIndex(schema) != -1) {
+                return stats.getColumn(attr.getIndex(schema)).getNullFraction();
+            }
+            return 0.1;
+        }
+        if (!(condition instanceof RelopNode relop)) return 1;
+
+        String op = relop.getOperator();
+        if (stats != null) {
+            // attr op constant, or constant op attr read the other way round
+            AttrNode attr = null;
+            Object constant = null;
+            if (relop.getLeft() instanceof AttrNode a && relop.getRight() instanceof ValueNode v) {
+                attr = a;
+                constant = v.value.getRaw();
+            } else if (relop.getLeft() instanceof ValueNode v && relop.getRight() instanceof AttrNode a) {
+                attr = a;
+                constant = v.value.getRaw();
+                op = switch (op) {
+                    case "<" -> ">";
+                    case "<=" -> ">=";
+                    case ">" -> "<";
+                    case ">=" -> "<=";
+                    default -> op;
+                };
+            }
+            int i = (attr == null) ? -1 : attr.getIndex(schema);
+            if (i != -1 && constant != null) {
+                ColumnStats column = stats.getColumn(i);
+                double notNull = 1 - column.getNullFraction();
+                double equal = column.equalFraction();
+                double less = column.lessFraction(constant);
+                return switch (op) {
+                    case "==" -> equal;
+                    case "<>" -> notNull - equal;
+                    case "<" -> less;
+                    case "<=" -> Math.min(notNull, less + equal);
+                    case ">" -> Math.max(0, notNull - less - equal);
+                    default -> notNull - less;
+                };
+            }
+        }
+        return switch (op) {
+            case "==" -> 0.1;
+            case "<>" -> 0.9;
+            default -> 1.0 / 3;
+        };
+    }
+
+    /**
+     * @return bytes a record of the schema takes on a page, offset included,
+     * guessing variable length strings to be half full
+     */
+    private static double recordWidth(Schema schema) {
+        double bytes = 4 + 4;
+        for (Attribute a : schema.getAttributes()) {
+            bytes += 1;
+            switch (a.getType()) {
+                case INTEGER -> bytes += 4;
+                case DOUBLE -> bytes += 8;
+                case BOOLEAN -> bytes += 1;
+                case CHAR -> bytes += 4 + a.getDataLength();
+                case VARCHAR -> bytes += 4 + a.getDataLength() / 2.0;
+            }
+        }
+        return bytes;
+    }
+}
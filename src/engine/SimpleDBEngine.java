@@ -3,9 +3,31 @@ package engine;
 import buffer.BufferManager;
 import catalog.Catalog;
 import catalog.FileCatalog;
+import exec.FilterOperator;
+import exec.IndexOnlyScanOperator;
+import exec.IndexOrderScanOperator;
+import exec.LimitOperator;
+import exec.Operator;
+import exec.ParallelFilter;
+import exec.ParallelScanOperator;
+import exec.ProductOperator;
+import exec.ProfiledOperator;
+import exec.ProjectOperator;
+import exec.ScanOperator;
+import exec.SortOperator;
+import index.BPlusTree;
+import index.BitmapIndex;
+import index.RoaringBitmap;
+import index.SecondaryIndex;
 import model.Record;
+import parser.ANDTree;
+import parser.AttrNode;
 import parser.IWhereTree;
+import parser.KeyRange;
+import parser.ORTree;
 import parser.ParserImplementation;
+import parser.RelopNode;
+import parser.isNULLNode;
 import storage.FileStorageManager;
 import storage.StorageManager;
 import util.DBException;
@@ -14,14 +36,17 @@ import model.*;
 import util.ParseException;
 
 import java.util.ArrayList;
-import java.util.Map;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class SimpleDBEngine implements DBEngine {
 
     private StorageManager storage;
     private BufferManager buffer;
     private Catalog catalog;
+    private boolean indexing;
 
     @Override
     public void startup(String dbLocation, int pageSize, int bufferSize, boolean indexingEnabled) throws DBException {
@@ -44,10 +69,19 @@ public class SimpleDBEngine implements DBEngine {
         buffer = new BufferManager();
         buffer.initialize(bufferSize, storage.getPageSize(), storage);
 
+        indexing = indexingEnabled;
+
         Map<String, Table> tables = catalog.getTables();
         for (Map.Entry<String, Table> entry : tables.entrySet()) {
             if (entry.getValue() instanceof TableSchema ts) {
                 ts.bind(storage, buffer);
+                ts.rebuildPageSummaries();
+                // an index left over from a run without the flag would be stale, so rebuild or drop it
+                if (indexing) {
+                    ts.enableIndex();
+                } else {
+                    ts.dropIndex();
+                }
             }
         }
 
@@ -87,16 +121,18 @@ public class SimpleDBEngine implements DBEngine {
             throw new DBException(e.getMessage());
         }
 
-        DDLParser ddl = new DDLParser(catalog, storage, buffer);
+        DDLParser ddl = new DDLParser(catalog, storage, buffer, indexing);
 
         // ---------- DDL ----------
         if (cmd instanceof CreateTableCommand) return ddl.createTable((CreateTableCommand) cmd);
         if (cmd instanceof DropTableCommand) return ddl.dropTable((DropTableCommand) cmd);
         if (cmd instanceof AlterTableAddCommand) return ddl.alterTableAdd((AlterTableAddCommand) cmd);
         if (cmd instanceof AlterTableDropCommand) return ddl.alterTableDrop((AlterTableDropCommand) cmd);
+        if (cmd instanceof CreateIndexCommand) return ddl.createIndex((CreateIndexCommand) cmd);
 
         // ---------- SELECT ----------
-        if (cmd instanceof SelectCommand) return handleSelect((SelectCommand) cmd, ddl);
+        if (cmd instanceof SelectCommand) return handleSelect((SelectCommand) cmd);
+        if (cmd instanceof ExplainCommand) return handleExplain((ExplainCommand) cmd);
 
         // ---------- INSERT ----------
         if (cmd instanceof InsertCommand) return handleInsert((InsertCommand) cmd);
@@ -107,52 +143,247 @@ public class SimpleDBEngine implements DBEngine {
 // ---------- UPDATE ----------
         if (cmd instanceof UpdateCommand) return handleUpdate((UpdateCommand) cmd);
 
+        // ---------- VACUUM ----------
+        if (cmd instanceof VacuumCommand) return handleVacuum((VacuumCommand) cmd);
+
+        // ---------- ANALYZE ----------
+        if (cmd instanceof AnalyzeCommand) return handleAnalyze((AnalyzeCommand) cmd);
+
         throw new DBException("Unsupported command.");
     }
 
-    private Result handleSelect(SelectCommand cmd, DDLParser ddl) throws DBException {
-        ArrayList<Table> temp_tables = new ArrayList<Table>();
+    private Result handleSelect(SelectCommand cmd) throws DBException {
+        //error checking
+        for (String name : cmd.getTableNames()) {
+            if (!catalog.exists(name)) {
+                return Result.error("No such table: " + name);
+            }
+        }
+
+        Operator plan = plan(cmd, false);
         try {
-            //error checking
-            for (String name : cmd.getTableNames()) {
-                if (!catalog.exists(name)) {
-                    return Result.error("No such table: " + name);
-                }
+            // a sort reads all of its input here, so its errors come before any output
+            plan.open();
+            print_helper(plan);
+        } finally {
+            plan.close();
+        }
+        return Result.ok(null);
+    }
+
+    /**
+     * Prints the operator tree a SELECT would run, one operator per line with
+     * its inputs indented below it. EXPLAIN ANALYZE runs the query first,
+     * throwing its records away, and adds what each operator did; the figures
+     * of an operator include those of its inputs.
+     */
+    private Result handleExplain(ExplainCommand cmd) throws DBException {
+        SelectCommand select = cmd.getSelect();
+        for (String name : select.getTableNames()) {
+            if (!catalog.exists(name)) {
+                return Result.error("No such table: " + name);
             }
-            Table fTable = cmd.from(catalog, storage, buffer, ddl);
-            temp_tables.add(fTable);
-
-            //Where Table
-            Table wTable = new TableSchema("w_table", fTable.schema(), storage, buffer);
-            temp_tables.add(wTable);
-            if (fTable instanceof TableSchema fts) {
-                for (int pid : fts.getPageIds()) {
-                    Page p = buffer.getPage(pid);
-                    for (model.Record r : p.getRecords()) {
-                        if (cmd.where(wTable.schema(), r)){
-                            wTable.insert(r);
-                        }
-                    }
+        }
+
+        Operator plan = plan(select, cmd.isAnalyze());
+        long nanos = 0;
+        if (cmd.isAnalyze()) {
+            long start = System.nanoTime();
+            try {
+                plan.open();
+                while (plan.next() != null) {
                 }
-            } else {
+            } finally {
+                plan.close();
+            }
+            nanos = System.nanoTime() - start;
+        }
+
+        StringBuilder out = new StringBuilder();
+        explain(plan, 0, out);
+        if (cmd.isAnalyze()) {
+            out.append(String.format("Execution time: %.3fms", nanos / 1e6));
+        } else {
+            out.setLength(out.length() - 1);
+        }
+        return Result.ok(out.toString());
+    }
+
+    private void explain(Operator op, int depth, StringBuilder out) {
+        out.append("  ".repeat(depth)).append(depth == 0 ? "" : "-> ").append(op.describe());
+        if (op instanceof ProfiledOperator profiled) {
+            out.append("  (").append(profiled.measurements()).append(")");
+        }
+        out.append("\n");
+        for (Operator child : op.children()) {
+            explain(child, depth + 1, out);
+        }
+    }
+
+    /**
+     * Builds the operator tree for a SELECT. Records stream from the scans
+     * through the WHERE filter, an ORDERBY sort and the projection to the
+     * output; only the sort writes anything to disk.
+     * @param profile true to wrap every operator in a ProfiledOperator, for EXPLAIN ANALYZE
+     * @return the root operator, not yet opened
+     */
+    private Operator plan(SelectCommand cmd, boolean profile) throws DBException {
+        String[] names = cmd.getTableNames();
+        IWhereTree where = cmd.getWhereTree();
+        boolean ordered = false;
+        Operator root = null;
+
+        if (names.length == 1) {
+            if (!(catalog.getTable(names[0]) instanceof TableSchema ts)) {
                 throw new DBException("Unsupported table type");
             }
+            SecondaryIndex covering = coveringIndex(ts, cmd);
+            SecondaryIndex ordering = (covering == null) ? orderingIndex(ts, cmd) : null;
+
+            if (covering != null) {
+                // every column the query needs is in the index, the table's pages are never read
+                KeyRange range = KeyRange.of(where, ts.schema(), ts.schema().getAttributeIndex(covering.getAttribute()));
+                root = ProfiledOperator.wrap(new IndexOnlyScanOperator((BPlusTree) covering.getIndex(), range,
+                        indexSchema(ts, covering)), profile, buffer);
+                ordered = true;
+            } else if (ordering != null) {
+                // rows come out of the index already in ORDERBY order
+                int attrIndex = ts.schema().getAttributeIndex(ordering.getAttribute());
+                KeyRange range = KeyRange.of(where, ts.schema(), attrIndex);
+                root = ProfiledOperator.wrap(new IndexOrderScanOperator((BPlusTree) ordering.getIndex(), range,
+                        attrIndex, candidatePages(ts, where), ts.schema(), buffer), profile, buffer);
+                ordered = true;
+            } else if (where != null) {
+                root = ProfiledOperator.wrap(new ParallelScanOperator(ts.name(), candidatePages(ts, where), ts.schema(),
+                        where, buffer), profile, buffer);
+                where = null;
+            } else {
+                root = ProfiledOperator.wrap(new ScanOperator(ts.name(), candidatePages(ts, where), ts.schema(), buffer),
+                        profile, buffer);
+            }
+        } else {
+            // attributes are named table.attribute once tables are combined
+            TableSchema[] tables = new TableSchema[names.length];
+            Schema[] schemas = new Schema[names.length];
+            for (int t = 0; t < names.length; t++) {
+                if (!(catalog.getTable(names[t]) instanceof TableSchema ts)) {
+                    throw new DBException("Unsupported table type");
+                }
+                tables[t] = ts;
+                schemas[t] = ScanOperator.qualifiedSchema(ts);
+            }
+            IWhereTree[] local = new IWhereTree[names.length];
+            where = pushDown(where, schemas, local);
+
+            List<JoinOptimizer.Input> inputs = new ArrayList<>();
+            for (int t = 0; t < names.length; t++) {
+                TableSchema ts = tables[t];
+                // conditions on this table alone are checked as it is read, and can rule out pages
+                List<Integer> pages = candidatePages(ts, local[t], schemas[t]);
+                Operator scan = (local[t] == null)
+                        ? new ScanOperator(ts.name(), pages, schemas[t], buffer)
+                        : new ParallelScanOperator(ts.name(), pages, schemas[t], local[t], buffer);
+                scan = ProfiledOperator.wrap(scan, profile, buffer);
+                // pages and the records on them are kept in primary key order
+                Attribute pk = ts.schema().getPrimaryKey();
+                int sortedOn = (pk == null) ? -1 : ts.schema().getAttributeIndex(pk.getName());
+                inputs.add(new JoinOptimizer.Input(scan, pages.size(), local[t], sortedOn, ts.getStats()));
+            }
 
-            Table oTable = cmd.orderBy(wTable, catalog, storage, buffer, ddl);
-            temp_tables.add(oTable);
+            JoinOptimizer optimizer = new JoinOptimizer(inputs, where, storage, buffer, profile);
+            root = optimizer.plan();
+            if (cmd.getOrderby() != null && optimizer.sortedOn() != -1) {
+                String[] orderby = cmd.getOrderby();
+                ordered = SortOperator.attributeIndex(root.schema(), orderby[orderby.length - 1]) == optimizer.sortedOn();
+            }
+        }
 
-            print_helper(oTable,cmd);
+        if (where != null) {
+            root = ProfiledOperator.wrap(new FilterOperator(root, where), profile, buffer);
+        }
+        if (cmd.getOrderby() != null && !ordered) {
+            String[] orderby = cmd.getOrderby();
+            int attrIndex = SortOperator.attributeIndex(root.schema(), orderby[orderby.length - 1]);
+            // with a LIMIT only the records up to the end of it need sorting
+            int keep = (cmd.getLimit() == -1) ? -1 : (int) Math.min(Integer.MAX_VALUE, (long) cmd.getLimit() + cmd.getOffset());
+            root = ProfiledOperator.wrap(new SortOperator(root, attrIndex, keep, storage, buffer), profile, buffer);
+        }
+        if (cmd.getLimit() != -1) {
+            root = ProfiledOperator.wrap(new LimitOperator(root, cmd.getLimit(), cmd.getOffset()), profile, buffer);
+        }
+        if (!cmd.isSelectStar()) {
+            root = ProfiledOperator.wrap(new ProjectOperator(root, projection(root.schema(), cmd)), profile, buffer);
+        }
+        return root;
+    }
 
+    /**
+     * Splits a WHERE tree on its top level ANDs and hands every condition that
+     * only names attributes of one table to that table, to be checked while it
+     * is scanned instead of after the tables are combined. Attributes are
+     * resolved against all the tables together, the way the whole tree would
+     * be, so a condition goes to the table it would have been read from.
+     * @param schemas each table's schema, attributes named table.attribute
+     * @param local filled with each table's conditions ANDed together, or null if it has none
+     * @return the conditions left to check on the combined records, or null if there are none
+     */
+    private IWhereTree pushDown(IWhereTree where, Schema[] schemas, IWhereTree[] local) {
+        Schema combined = schemas[0];
+        int[] firstColumn = new int[schemas.length + 1];
+        for (int t = 1; t < schemas.length; t++) {
+            combined = ProductOperator.combine(combined, schemas[t]);
+        }
+        for (int t = 0; t < schemas.length; t++) {
+            firstColumn[t + 1] = firstColumn[t] + schemas[t].getAttributes().size();
+        }
 
-        } finally{
-            //Always drop temp tables
-            for (Table t : temp_tables) {
-                if (t.isTemporary())
-                    ddl.dropTable(t.name());
+        IWhereTree rest = null;
+        for (IWhereTree condition : IWhereTree.conjuncts(where)) {
+            int table = -1;
+            boolean single = true;
+            for (AttrNode attr : IWhereTree.attributeNodes(condition)) {
+                int i = attr.getIndex(combined);
+                int t = 0;
+                while (i >= firstColumn[t + 1]) t++;
+                single &= i != -1 && (table == -1 || table == t);
+                table = t;
+            }
+            if (table != -1 && single) {
+                local[table] = and(local[table], condition);
+            } else {
+                rest = and(rest, condition);
             }
         }
+        return rest;
+    }
 
-        return Result.ok(null);
+    private static IWhereTree and(IWhereTree left, IWhereTree right) {
+        return (left == null) ? right : new ANDTree(left, right);
+    }
+
+    /**
+     * @return the position in the schema of each selected attribute, in SELECT order
+     */
+    private int[] projection(Schema schema, SelectCommand cmd) throws DBException {
+        List<Attribute> allAttrs = schema.getAttributes();
+        String[][] selected = cmd.getAttributeNames();
+        int[] columns = new int[selected.length];
+        for (int c = 0; c < selected.length; c++) {
+            String attrName = selected[c][1];
+            int found = -1;
+            for (int i = 0; i < allAttrs.size(); i++) {
+                if (allAttrs.get(i).getName().equalsIgnoreCase(attrName) ||
+                        allAttrs.get(i).getName().endsWith("." + attrName)) {
+                    found = i;
+                    break;
+                }
+            }
+            if (found == -1) {
+                throw new DBException("No such attribute: " + attrName);
+            }
+            columns[c] = found;
+        }
+        return columns;
     }
 
     private Result handleInsert(InsertCommand cmd) throws DBException {
@@ -166,6 +397,7 @@ public class SimpleDBEngine implements DBEngine {
         int inserted = 0;
 
         // InsertCommand stores rows as List<Object[]>, and rows separated by addRow()
+        List<model.Record> rows = new ArrayList<>();
         for (List<Object[]> row : cmd.getValues()) {
             if (row == null || row.isEmpty()) continue;
 
@@ -174,7 +406,16 @@ public class SimpleDBEngine implements DBEngine {
                 Object raw = pair[1];              // pair[0] is Datatype, pair[1] is the value
                 r.addAttribute(new Value(raw));
             }
+            rows.add(r);
+        }
 
+        // batches of a page or more are sorted and merged into the table in one pass;
+        // it stops before the first bad row, which the loop below then reports
+        if (t instanceof TableSchema ts && ts.worthBulkLoading(rows)) {
+            inserted = ts.bulkInsert(rows);
+        }
+
+        for (model.Record r : rows.subList(inserted, rows.size())) {
             try {
                 t.insert(r);
                 inserted++;
@@ -200,24 +441,47 @@ public class SimpleDBEngine implements DBEngine {
             throw new DBException("Unsupported table type");
         }
 
-        int deleted = 0;
+        int[] deleted = {0};
 
-        for (int pid : ts.getPageIds()) {
-            Page p = buffer.getPage(pid);
-            List<Record> records = p.getRecords();
+        new ParallelFilter(candidatePages(ts, cmd.getWhereTree()), cmd.getWhereTree(), ts.schema(), buffer)
+                .forEach((pid, records, matches) -> deleted[0] += ts.removeRecordsAt(pid, matches));
 
-            for (int i = records.size() - 1; i >= 0; i--) {
-                Record r = records.get(i);
-                if (cmd.where(ts.schema(), r)) {
-                    records.remove(i);
-                    deleted++;
-                }
-            }
+        // fold the pages the delete thinned out back together
+        if (deleted[0] > 0) {
+            ts.mergeUnderfull();
+        }
+
+        return Result.ok(deleted[0] + " rows deleted");
+    }
+
+    private Result handleVacuum(VacuumCommand cmd) throws DBException {
+        String tableName = cmd.getTableName();
 
-            buffer.markDirty(pid);
+        if (!catalog.exists(tableName)) {
+            return Result.error("No such table: " + tableName);
+        }
+
+        if (!(catalog.getTable(tableName) instanceof TableSchema ts)) {
+            throw new DBException("Unsupported table type");
+        }
+
+        int freed = ts.vacuum();
+        return Result.ok(freed + " pages freed");
+    }
+
+    private Result handleAnalyze(AnalyzeCommand cmd) throws DBException {
+        String tableName = cmd.getTableName();
+
+        if (!catalog.exists(tableName)) {
+            return Result.error("No such table: " + tableName);
+        }
+
+        if (!(catalog.getTable(tableName) instanceof TableSchema ts)) {
+            throw new DBException("Unsupported table type");
         }
 
-        return Result.ok(deleted + " rows deleted");
+        TableStats stats = ts.analyze();
+        return Result.ok(stats.getRowCount() + " rows on " + stats.getPageCount() + " pages analyzed");
     }
 
     private Result handleUpdate(UpdateCommand cmd) throws DBException {
@@ -235,51 +499,40 @@ public class SimpleDBEngine implements DBEngine {
         int attrIndex = schema.getAttributeIndex(cmd.getAttribute());
         int updated = 0;
 
-        for (int pid : ts.getPageIds()) {
-            Page p = buffer.getPage(pid);
-            for (Record r : p.getRecords()) {
-                if (cmd.where(schema, r)) {
-                    Attribute attr = schema.getAttributes().get(attrIndex);
-                    if (attr.isPrimaryKey()) {
-                        Value newVal = new Value(cmd.getValue());
-                        // check uniqueness against all records
-                        if (attr.isPrimaryKey()) {
-                            // count how many rows will be updated
-                            int matchCount = 0;
-                            for (int checkPid : ts.getPageIds()) {
-                                Page checkPage = buffer.getPage(checkPid);
-                                for (Record checkRec : checkPage.getRecords()) {
-                                    if (cmd.where(schema, checkRec)) matchCount++;
-                                }
-                            }
-                            if (matchCount > 1) {
-                                return Result.error("Cannot set multiple rows to the same primary key value: " + cmd.getValue());
-                            }
-                            for (int checkPid : ts.getPageIds()) {
-                                Page checkPage = buffer.getPage(checkPid);
-                                for (Record checkRec : checkPage.getRecords()) {
-                                    if (checkRec == r) continue;
-                                    if (checkRec.getAttributes().get(attrIndex).getRaw().equals(newVal.getRaw())) {
-                                        return Result.error("Duplicate primary key value: " + newVal.getRaw());
-                                    }
-                                }
-                            }
+        // find the rows first since a key change can move them between pages
+        List<Integer> matchedPids = new ArrayList<>();
+        List<Record> matched = new ArrayList<>();
+        new ParallelFilter(candidatePages(ts, cmd.getWhereTree()), cmd.getWhereTree(), schema, buffer)
+                .forEach((pid, records, matches) -> {
+                    for (int i = 0; i < records.size(); i++) {
+                        if (matches[i]) {
+                            matchedPids.add(pid);
+                            matched.add(records.get(i));
                         }
                     }
-                }
+                });
+
+        Attribute attr = schema.getAttributes().get(attrIndex);
+        if (attr.isPrimaryKey() && !matched.isEmpty()) {
+            // check uniqueness against all records
+            if (matched.size() > 1) {
+                return Result.error("Cannot set multiple rows to the same primary key value: " + cmd.getValue());
+            }
+            Value newVal = new Value(cmd.getValue());
+            Record existing = ts.findByKey(newVal.getRaw());
+            if (existing != null && !newVal.getRaw().equals(matched.get(0).getValue(attrIndex).getRaw())) {
+                return Result.error("Duplicate primary key value: " + newVal.getRaw());
             }
         }
 
-        // all checks passed, now apply
-        for (int pid : ts.getPageIds()) {
-            Page p = buffer.getPage(pid);
-            for (Record r : p.getRecords()) {
-                if (cmd.where(schema, r)) {
-                    r.getAttributes().set(attrIndex, new Value(cmd.getValue()));
-                    updated++;
-                }
-            }
-            buffer.markDirty(pid);
+        for (int i = 0; i < matched.size(); i++) {
+            ts.updateRecord(matchedPids.get(i), matched.get(i), attrIndex, new Value(cmd.getValue()));
+            updated++;
+        }
+
+        // a key change takes the record off its page, which may leave it empty or underfull
+        if (attr.isPrimaryKey() && updated > 0) {
+            ts.mergeUnderfull();
         }
 
         return Result.ok(updated + " rows updated");
@@ -287,39 +540,193 @@ public class SimpleDBEngine implements DBEngine {
 
 
 
-    private void print_helper(Table t, SelectCommand s) throws DBException {
-        Schema schema = t.schema();
-        List<Attribute> allAttrs = schema.getAttributes();
+    /**
+     * Picks the pages of a table that can hold rows matching a WHERE clause.
+     * Records are kept in primary key order across pages, so comparisons of the
+     * key against constants narrow the scan to a run of pages found by binary
+     * search on the fence keys (or to nothing, for an equality on a key the
+     * table's Bloom filter has never seen), and an equality on a hash indexed attribute
+     * narrows it to the pages the index points at. Equalities on bitmap indexed
+     * attributes, combined with AND and OR, narrow it to the pages in the
+     * matching bitmaps, and each page's zone map drops it if none of its
+     * values can match. The WHERE clause is still checked on every row.
+     * @param ts table being scanned
+     * @param where the WHERE tree, or null
+     * @return pageIds to scan, in order
+     */
+    private List<Integer> candidatePages(TableSchema ts, IWhereTree where) throws DBException {
+        return candidatePages(ts, where, ts.schema());
+    }
 
-        // Determine which column indices to print
-        List<Integer> colIndices = new ArrayList<>();
-        if (s == null || s.isSelectStar()) {
-            for (int i = 0; i < allAttrs.size(); i++) {
-                if (!allAttrs.get(i).getName().equals("__pk") && !allAttrs.get(i).getName().endsWith(".__pk"))
-                    colIndices.add(i);
+    /**
+     * @param schema the schema the WHERE tree names attributes by; its attributes
+     *               line up with the table's, but may be named table.attribute
+     */
+    private List<Integer> candidatePages(TableSchema ts, IWhereTree where, Schema schema) throws DBException {
+        Attribute pk = ts.schema().getPrimaryKey();
+        // temp tables are filled by append() and aren't in key order
+        if (where == null || pk == null || ts.isTemporary()) {
+            return ts.getPageIds();
+        }
+
+        KeyRange range = KeyRange.of(where, schema, ts.schema().getAttributeIndex(pk.getName()));
+        if (range.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // a lookup of one key the table has never held reads nothing
+        if (range.isPoint() && !ts.mayContainKey(range.getLow().getRaw())) {
+            return new ArrayList<>();
+        }
+        int[] span = range.isUnbounded()
+                ? new int[]{0, ts.getPageIds().size()}
+                : ts.pageSpan(range.getLow(), range.getHigh());
+        if (span[0] >= span[1]) {
+            return new ArrayList<>();
+        }
+        // copied, deletes and key updates can change the page list while we walk it
+        List<Integer> pages = new ArrayList<>(ts.getPageIds().subList(span[0], span[1]));
+
+        // a bound on an indexed attribute: only the pages the index points at.
+        // Hash indexes can only answer attr == constant, B+trees any range.
+        for (SecondaryIndex si : ts.getSecondaryIndexes()) {
+            KeyRange probe = KeyRange.of(where, schema, ts.schema().getAttributeIndex(si.getAttribute()));
+            if (probe.isEmpty()) {
+                return new ArrayList<>();
             }
-        } else {
-            for (String[] pair : s.getAttributeNames()) {
-                String attrName = pair[1];
-                int found = -1;
-                for (int i = 0; i < allAttrs.size(); i++) {
-                    if (allAttrs.get(i).getName().equalsIgnoreCase(attrName) ||
-                            allAttrs.get(i).getName().endsWith("." + attrName)) {
-                        found = i;
-                        break;
-                    }
+
+            Set<Integer> hits = new HashSet<>();
+            if (si.getType().equals(SecondaryIndex.HASH) && probe.isPoint()) {
+                for (Record_ID rid : si.getIndex().search(probe.getLow())) {
+                    hits.add(rid.getPageId());
                 }
-                if (found == -1) {
-                    throw new DBException("No such attribute: " + attrName);
+            } else if (si.getType().equals(SecondaryIndex.BTREE) && !probe.isUnbounded()) {
+                for (BPlusTree.Entry e : ((BPlusTree) si.getIndex()).range(probe.getLow(), probe.getHigh())) {
+                    hits.add(e.rid.getPageId());
                 }
-                colIndices.add(found);
+            } else {
+                continue;
             }
+            pages.removeIf(pid -> !hits.contains(pid));
+        }
+
+        // a page whose zone map rules out every row is never read
+        pages.removeIf(pid -> {
+            ZoneMap zone = ts.getZones().get(pid);
+            return zone != null && !zone.mayMatch(where, schema);
+        });
+
+        RoaringBitmap matching = bitmapPages(ts, where, schema);
+        if (matching != null) {
+            pages.removeIf(pid -> !matching.contains(pid));
+        }
+        return pages;
+    }
+
+    /**
+     * Works out from bitmap indexes alone which pages can hold rows matching a
+     * WHERE tree: attr == constant and attr IS NULL give the value's bitmap,
+     * AND intersects and OR unions. Nothing else can be answered, which makes
+     * an OR unanswerable but leaves an AND to its other side.
+     * @return the pages that can match, or null if the bitmaps can't tell
+     */
+    private RoaringBitmap bitmapPages(TableSchema ts, IWhereTree node, Schema schema) throws DBException {
+        if (node instanceof ANDTree and) {
+            RoaringBitmap left = bitmapPages(ts, and.getLeft(), schema);
+            RoaringBitmap right = bitmapPages(ts, and.getRight(), schema);
+            if (left == null) return right;
+            if (right == null) return left;
+            return left.and(right);
         }
+        if (node instanceof ORTree or) {
+            RoaringBitmap left = bitmapPages(ts, or.getLeft(), schema);
+            RoaringBitmap right = (left == null) ? null : bitmapPages(ts, or.getRight(), schema);
+            return (right == null) ? null : left.or(right);
+        }
+
+        AttrNode attr;
+        Value key;
+        if (node instanceof isNULLNode isNull && isNull.getOperand() instanceof AttrNode a) {
+            attr = a;
+            key = new Value(null);
+        } else if (node instanceof RelopNode relop && relop.getOperator().equals("==")) {
+            attr = (relop.getLeft() instanceof AttrNode a) ? a
+                    : (relop.getRight() instanceof AttrNode b) ? b : null;
+            if (attr == null || attr.getIndex(schema) == -1) return null;
+            // KeyRange leaves out constants of the wrong type, evaluate() reports those
+            KeyRange range = KeyRange.of(node, schema, attr.getIndex(schema));
+            if (!range.isPoint()) return null;
+            key = range.getLow();
+        } else {
+            return null;
+        }
+
+        SecondaryIndex si = ts.findSecondaryIndex(attr.getIndex(schema), SecondaryIndex.BITMAP);
+        if (si == null) return null;
+        ts.buildIndex(si);
+        return ((BitmapIndex) si.getIndex()).pagesWith(key);
+    }
+
+    /**
+     * Finds a B+tree index that can answer a single table SELECT by itself:
+     * the query only selects and filters on the indexed attribute, and either
+     * orders by it or pins it to one value, so the index's order is the right one.
+     * @return the index, or null if the table's pages have to be read
+     */
+    private SecondaryIndex coveringIndex(TableSchema ts, SelectCommand cmd) {
+        if (cmd.getTableNames().length != 1 || ts.isTemporary() || cmd.isSelectStar()) return null;
+        Schema schema = ts.schema();
 
-        int colCount = colIndices.size();
+        int attrIndex = -1;
+        for (String[] pair : cmd.getAttributeNames()) {
+            int i = new AttrNode(pair[1]).getIndex(schema);
+            if (i == -1 || (attrIndex != -1 && i != attrIndex)) return null;
+            attrIndex = i;
+        }
+        SecondaryIndex si = ts.findSecondaryIndex(attrIndex, SecondaryIndex.BTREE);
+        if (si == null) return null;
+
+        for (AttrNode attr : IWhereTree.attributeNodes(cmd.getWhereTree())) {
+            if (attr.getIndex(schema) != attrIndex) return null;
+        }
+        if (cmd.getOrderby() != null) {
+            return (orderbyIndex(schema, cmd) == attrIndex) ? si : null;
+        }
+        return KeyRange.of(cmd.getWhereTree(), schema, attrIndex).isPoint() ? si : null;
+    }
+
+    /**
+     * @return a B+tree index on the ORDERBY attribute of a single table SELECT, or null
+     */
+    private SecondaryIndex orderingIndex(TableSchema ts, SelectCommand cmd) {
+        if (cmd.getTableNames().length != 1 || ts.isTemporary() || cmd.getOrderby() == null) return null;
+        int attrIndex = orderbyIndex(ts.schema(), cmd);
+        return (attrIndex == -1) ? null : ts.findSecondaryIndex(attrIndex, SecondaryIndex.BTREE);
+    }
+
+    private int orderbyIndex(Schema schema, SelectCommand cmd) {
+        String[] orderby = cmd.getOrderby();
+        return new AttrNode(orderby[orderby.length - 1]).getIndex(schema);
+    }
+
+    /**
+     * @return a schema holding just the indexed attribute, the shape of an index-only row
+     */
+    private Schema indexSchema(TableSchema ts, SecondaryIndex si) {
+        Attribute a = ts.schema().getAttributes().get(ts.schema().getAttributeIndex(si.getAttribute()));
+        return new Schema(List.of(new Attribute(a.getName(), false, false, a.getType(), a.getDataLength())));
+    }
+
+    /**
+     * Prints every record an opened plan returns, as a table of all the
+     * attributes in its schema
+     */
+    private void print_helper(Operator plan) throws DBException {
+        List<Attribute> allAttrs = plan.schema().getAttributes();
+
+        int colCount = allAttrs.size();
         int[] widths = new int[colCount];
         for (int i = 0; i < colCount; i++)
-            widths[i] = getColumnWidth(allAttrs.get(colIndices.get(i)));
+            widths[i] = getColumnWidth(allAttrs.get(i));
 
         StringBuilder divider = new StringBuilder("+");
         for (int w : widths) divider.append("-".repeat(w + 2)).append("+");
@@ -327,25 +734,19 @@ public class SimpleDBEngine implements DBEngine {
         System.out.println(divider);
         StringBuilder header = new StringBuilder("|");
         for (int i = 0; i < colCount; i++)
-            header.append(String.format(" %-" + widths[i] + "s |", allAttrs.get(colIndices.get(i)).getName()));
+            header.append(String.format(" %-" + widths[i] + "s |", allAttrs.get(i).getName()));
         System.out.println(header);
         System.out.println(divider);
 
-        // Stream page by page instead of scan()
-        if (!(t instanceof TableSchema ts)) {
-            throw new DBException("Unsupported table type");
-        }
-        for (int pid : ts.getPageIds()) {
-            Page p = buffer.getPage(pid);
-            for (Record r : p.getRecords()) {
-                StringBuilder row = new StringBuilder("|");
-                for (int i = 0; i < colCount; i++) {
-                    Value v = r.getAttributes().get(colIndices.get(i));
-                    String cell = (v == null || v.getRaw() == null) ? "NULL" : v.getRaw().toString();
-                    row.append(String.format(" %-" + widths[i] + "s |", cell));
-                }
-                System.out.println(row);
+        Record r;
+        while ((r = plan.next()) != null) {
+            StringBuilder row = new StringBuilder("|");
+            for (int i = 0; i < colCount; i++) {
+                Value v = r.getValue(i);
+                String cell = (v == null || v.getRaw() == null) ? "NULL" : v.getRaw().toString();
+                row.append(String.format(" %-" + widths[i] + "s |", cell));
             }
+            System.out.println(row);
         }
         System.out.println(divider);
     }
@@ -0,0 +1,125 @@
+package exec;
+
+import buffer.BufferManager;
+import model.Record;
+import model.Schema;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pairs every left (outer) record with every right (inner) record, like
+ * ProductOperator, but reads the outer input a block at a time: as many
+ * records as fill the buffer's pages less two, one for the inner input and
+ * one for the output. The inner input is read once per block instead of once
+ * per outer record.
+ * <br>
+ * Within a block the records come out inner record by inner record, so the
+ * output isn't in the outer input's order.
+ */
+public class BlockNestedLoopJoinOperator implements Operator {
+
+    private final Operator outer;
+    private final Operator inner;
+    private final BufferManager buffer;
+    private final Schema schema;
+
+    private final List<Record> block = new ArrayList<>();
+    private Record pending;          // outer record read past the end of the last block
+    private boolean outerDone;
+    private Record innerRecord;      // inner record being paired with the block
+    private int blockIndex;
+
+    public BlockNestedLoopJoinOperator(Operator outer, Operator inner, BufferManager buffer) {
+        this.outer = outer;
+        this.inner = inner;
+        this.buffer = buffer;
+        this.schema = ProductOperator.combine(outer.schema(), inner.schema());
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public String describe() {
+        return "Block Nested Loop (" + Math.max(1, buffer.getCapacity() - 2) + " page blocks)";
+    }
+
+    @Override
+    public List<Operator> children() {
+        return List.of(outer, inner);
+    }
+
+    @Override
+    public void open() throws DBException {
+        close();
+        outer.open();
+        outerDone = false;
+        nextBlock();
+    }
+
+    @Override
+    public Record next() throws DBException {
+        while (!block.isEmpty()) {
+            if (innerRecord != null && blockIndex < block.size()) {
+                return ProductOperator.combine(block.get(blockIndex++), innerRecord);
+            }
+            innerRecord = inner.next();
+            blockIndex = 0;
+            if (innerRecord == null) {
+                nextBlock();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws DBException {
+        outer.close();
+        inner.close();
+        block.clear();
+        pending = null;
+        innerRecord = null;
+    }
+
+    /**
+     * Reads the next block of outer records and starts the inner input over.
+     * Leaves the block empty once the outer input is used up.
+     */
+    private void nextBlock() throws DBException {
+        block.clear();
+        innerRecord = null;
+        blockIndex = 0;
+        if (outerDone && pending == null) return;
+
+        long budget = (long) Math.max(1, buffer.getCapacity() - 2) * buffer.getPageSize();
+        long bytes = 0;
+        if (pending != null) {
+            block.add(pending);
+            bytes += buffer.recordSizeBytes(pending);
+            pending = null;
+        }
+        while (!outerDone) {
+            Record r = outer.next();
+            if (r == null) {
+                outerDone = true;
+                break;
+            }
+            int size = buffer.recordSizeBytes(r);
+            if (!block.isEmpty() && bytes + size > budget) {
+                pending = r;
+                break;
+            }
+            block.add(r);
+            bytes += size;
+        }
+
+        if (!block.isEmpty()) {
+            inner.close();
+            inner.open();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package exec;
+
+import model.Record;
+import model.Schema;
+import parser.AttrNode;
+import parser.CompiledWhere;
+import parser.IWhereTree;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes on the records of its child that satisfy a WHERE tree. The tree is
+ * compiled for the child's schema when the filter is opened, and records are
+ * read a batch at a time and checked together through IWhereTree.select().
+ */
+public class FilterOperator implements Operator {
+
+    // records checked together, few enough for their columns to stay in cache
+    public static final int BATCH_SIZE = 1024;
+
+    private final Operator child;
+    private final IWhereTree where;
+    private IWhereTree compiled;
+    private final List<Record> batch = new ArrayList<>();
+    private final int[] sel = new int[BATCH_SIZE];
+    private int selected;
+    private int position;
+
+    public FilterOperator(Operator child, IWhereTree where) {
+        this.child = child;
+        this.where = where;
+    }
+
+    @Override
+    public Schema schema() {
+        return child.schema();
+    }
+
+    @Override
+    public String describe() {
+        return "Filter " + where;
+    }
+
+    @Override
+    public List<Operator> children() {
+        return List.of(child);
+    }
+
+    /**
+     * Also checks that every attribute the tree names exists, so a misspelt
+     * name fails before any record is returned rather than on the first one
+     */
+    @Override
+    public void open() throws DBException {
+        for (AttrNode attr : IWhereTree.attributeNodes(where)) {
+            if (attr.getIndex(child.schema()) == -1) {
+                throw new DBException("Attribute {" + attr.attrName + "} not found. Return value of -1.");
+            }
+        }
+        compiled = CompiledWhere.compile(where, child.schema());
+        batch.clear();
+        selected = 0;
+        position = 0;
+        child.open();
+    }
+
+    @Override
+    public Record next() throws DBException {
+        while (position == selected) {
+            batch.clear();
+            Record r;
+            while (batch.size() < BATCH_SIZE && (r = child.next()) != null) {
+                batch.add(r);
+            }
+            if (batch.isEmpty()) return null;
+            for (int i = 0; i < batch.size(); i++) {
+                sel[i] = i;
+            }
+            selected = compiled.select(child.schema(), batch, sel, batch.size());
+            position = 0;
+        }
+        return batch.get(sel[position++]);
+    }
+
+    @Override
+    public void close() throws DBException {
+        batch.clear();
+        selected = 0;
+        position = 0;
+        child.close();
+    }
+}
@@ -0,0 +1,327 @@
+package exec;
+
+import buffer.BufferManager;
+import model.Record;
+import model.Schema;
+import storage.StorageManager;
+import util.DBException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Equi-join of two inputs on one attribute each. The build input is read
+ * into a hash table on its key and the probe input is streamed past it, so
+ * each input is read once instead of the right one once per left record.
+ * <br>
+ * If the build input doesn't fit in the memory budget (the buffer's pages,
+ * less one for the input and one for the output), both inputs are split by a
+ * hash of their keys into partitions written to temporary pages, grace hash
+ * join style. Matching records always land in the same partition pair, so
+ * the partitions are then joined one pair at a time. A pair whose build side
+ * is still over the budget is partitioned again on a rehash of the key, up
+ * to MAX_LEVELS deep. A pair that can't be split that way, such as one hot
+ * key, is joined a block at a time instead: each budget's worth of build
+ * records is hashed and the whole probe side is read past it. So the hash
+ * table never holds much more than the budget.
+ * <br>
+ * Records with a null key never match. Output records are left then right,
+ * whichever side was built.
+ */
+public class HashJoinOperator implements Operator {
+
+    private static final int MAX_LEVELS = 4;
+
+    private final Operator left;
+    private final Operator right;
+    private final int leftKey;
+    private final int rightKey;
+    private final boolean buildLeft;
+    private final StorageManager storage;
+    private final BufferManager buffer;
+    private final Schema schema;
+
+    private final Map<Object, List<Record>> table = new HashMap<>();
+    private long budget;
+    private int fanout;
+    private Operator probeInput;       // probe side when the build side fit in memory
+    private final Deque<Pair> pending = new ArrayDeque<>(); // partition pairs, when it didn't
+    private Pair current;
+    private RunFile.Reader buildBlocks; // build side of current, when it is joined a block at a time
+    private RunFile.Reader probeReader;
+
+    private Record probe;              // probe record being matched
+    private List<Record> matches;
+    private int matchIndex;
+
+    /**
+     * @param leftKey position of the join attribute in the left schema
+     * @param rightKey position of the join attribute in the right schema
+     * @param buildLeft true to build on the left input, which should be the smaller one
+     */
+    public HashJoinOperator(Operator left, Operator right, int leftKey, int rightKey, boolean buildLeft,
+                            StorageManager storage, BufferManager buffer) {
+        this.left = left;
+        this.right = right;
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+        this.buildLeft = buildLeft;
+        this.storage = storage;
+        this.buffer = buffer;
+        this.schema = ProductOperator.combine(left.schema(), right.schema());
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public String describe() {
+        return "Hash Join " + left.schema().getAttributes().get(leftKey).getName() + " == "
+                + right.schema().getAttributes().get(rightKey).getName() + " (build " + (buildLeft ? "left" : "right") + ")";
+    }
+
+    @Override
+    public List<Operator> children() {
+        return List.of(left, right);
+    }
+
+    @Override
+    public void open() throws DBException {
+        close();
+        Operator build = buildLeft ? left : right;
+        budget = (long) Math.max(1, buffer.getCapacity() - 2) * buffer.getPageSize();
+
+        build.open();
+        List<Record> held = new ArrayList<>();
+        long bytes = 0;
+        Record r;
+        while (bytes <= budget && (r = build.next()) != null) {
+            held.add(r);
+            bytes += buffer.recordSizeBytes(r);
+        }
+
+        if (bytes <= budget) {
+            build.close();
+            for (Record rec : held) {
+                addToTable(rec);
+            }
+            probeInput = buildLeft ? right : left;
+            probeInput.open();
+            return;
+        }
+
+        // one output page per partition has to fit in the buffer at once
+        fanout = Math.max(2, buffer.getCapacity() - 1);
+        List<Pair> pairs = newPartitions(0);
+        for (Record rec : held) {
+            partition(rec, buildKey(), pairs, 0, true);
+        }
+        held = null;
+        while ((r = build.next()) != null) {
+            partition(r, buildKey(), pairs, 0, true);
+        }
+        build.close();
+
+        Operator probeSide = buildLeft ? right : left;
+        probeSide.open();
+        while ((r = probeSide.next()) != null) {
+            partition(r, probeKey(), pairs, 0, false);
+        }
+        probeSide.close();
+
+        pending.addAll(pairs);
+        nextPartition();
+    }
+
+    @Override
+    public Record next() throws DBException {
+        while (true) {
+            if (matches != null && matchIndex < matches.size()) {
+                Record match = matches.get(matchIndex++);
+                return buildLeft ? ProductOperator.combine(match, probe) : ProductOperator.combine(probe, match);
+            }
+
+            probe = nextProbe();
+            if (probe == null) return null;
+            Object key = probe.getValue(probeKey()).getRaw();
+            matches = (key == null) ? null : table.get(key);
+            matchIndex = 0;
+        }
+    }
+
+    @Override
+    public void close() throws DBException {
+        left.close();
+        right.close();
+        table.clear();
+        probeInput = null;
+        if (current != null) current.free();
+        current = null;
+        while (!pending.isEmpty()) {
+            pending.poll().free();
+        }
+        buildBlocks = null;
+        probeReader = null;
+        matches = null;
+    }
+
+    /**
+     * @return the next probe record, moving on to the next partition pair
+     * when the current one is used up
+     */
+    private Record nextProbe() throws DBException {
+        if (probeInput != null) {
+            return probeInput.next();
+        }
+        while (probeReader != null) {
+            Record r = probeReader.next();
+            if (r != null) return r;
+            nextPartition();
+        }
+        return null;
+    }
+
+    /**
+     * Builds the hash table for the next block of the current pair, or else
+     * for the next partition pair, skipping pairs with an empty side and
+     * splitting up the ones too big to build. Leaves probeReader null after
+     * the last one.
+     */
+    private void nextPartition() throws DBException {
+        table.clear();
+        probeReader = null;
+        if (buildBlocks != null && loadBlock()) {
+            probeReader = current.probe.reader();
+            return;
+        }
+        buildBlocks = null;
+        if (current != null) current.free();
+        current = null;
+
+        while (!pending.isEmpty()) {
+            Pair pair = pending.poll();
+            if (pair.build.size() == 0 || pair.probe.size() == 0) {
+                pair.free();
+                continue;
+            }
+            if ((long) pair.build.pageCount() * buffer.getPageSize() > budget && pair.level < MAX_LEVELS) {
+                repartition(pair);
+                continue;
+            }
+
+            // still over the budget means it can't be split any further; a pair that fits is one block
+            current = pair;
+            buildBlocks = pair.build.reader();
+            loadBlock();
+            probeReader = pair.probe.reader();
+            return;
+        }
+    }
+
+    /**
+     * Fills the hash table with the next budget's worth of the current build side.
+     * @return false if it was already used up
+     */
+    private boolean loadBlock() throws DBException {
+        long bytes = 0;
+        Record r;
+        while (bytes <= budget && (r = buildBlocks.next()) != null) {
+            addToTable(r);
+            bytes += buffer.recordSizeBytes(r);
+        }
+        return bytes > 0;
+    }
+
+    /**
+     * Splits an oversized pair one level further, on a rehash of the key, and
+     * queues the parts in its place. A part that kept over half the build
+     * records is mostly one key, or keys with equal hash codes, which no level
+     * will split, so it is queued as already at the bottom.
+     */
+    private void repartition(Pair pair) throws DBException {
+        int level = pair.level + 1;
+        List<Pair> parts = newPartitions(level);
+        RunFile.Reader reader = pair.build.reader();
+        Record r;
+        while ((r = reader.next()) != null) {
+            partition(r, buildKey(), parts, level, true);
+        }
+        reader = pair.probe.reader();
+        while ((r = reader.next()) != null) {
+            partition(r, probeKey(), parts, level, false);
+        }
+
+        for (Pair part : parts) {
+            if (part.build.size() * 2 > pair.build.size()) part.level = MAX_LEVELS;
+            pending.addFirst(part);
+        }
+        pair.free();
+    }
+
+    private void addToTable(Record r) {
+        Object key = r.getValue(buildKey()).getRaw();
+        if (key != null) {
+            table.computeIfAbsent(key, k -> new ArrayList<>()).add(r);
+        }
+    }
+
+    private List<Pair> newPartitions(int level) {
+        List<Pair> parts = new ArrayList<>();
+        for (int i = 0; i < fanout; i++) {
+            parts.add(new Pair(new RunFile(storage, buffer), new RunFile(storage, buffer), level));
+        }
+        return parts;
+    }
+
+    // null keys can't match anything, so they aren't written out at all
+    private void partition(Record r, int keyIndex, List<Pair> parts, int level, boolean build) throws DBException {
+        Object key = r.getValue(keyIndex).getRaw();
+        if (key == null) return;
+        int h = key.hashCode() * 0x9e3779b9;
+        h ^= h >>> 16;
+        if (level > 0) {
+            // keys that shared a partition a level up have to spread out again
+            h ^= level * 0x85ebca6b;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 13;
+            h *= 0x85ebca6b;
+            h ^= h >>> 16;
+        }
+        Pair part = parts.get(Math.floorMod(h, parts.size()));
+        (build ? part.build : part.probe).add(r);
+    }
+
+    private int buildKey() {
+        return buildLeft ? leftKey : rightKey;
+    }
+
+    private int probeKey() {
+        return buildLeft ? rightKey : leftKey;
+    }
+
+    /**
+     * The build and probe records that hashed to one partition.
+     */
+    private static final class Pair {
+        final RunFile build;
+        final RunFile probe;
+        int level;
+
+        Pair(RunFile build, RunFile probe, int level) {
+            this.build = build;
+            this.probe = probe;
+            this.level = level;
+        }
+
+        void free() throws DBException {
+            build.free();
+            probe.free();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package exec;
+
+import index.BPlusTree;
+import model.Record;
+import model.Schema;
+import parser.KeyRange;
+import util.DBException;
+
+import java.util.List;
+
+/**
+ * Returns the keys of a B+tree index within a range, in key order, as
+ * single-attribute records. The table itself is never read.
+ */
+public class IndexOnlyScanOperator implements Operator {
+
+    private final BPlusTree tree;
+    private final KeyRange range;
+    private final Schema schema;
+
+    private List<BPlusTree.Entry> entries;
+    private int position;
+
+    /**
+     * @param range the keys wanted
+     * @param schema a schema holding just the indexed attribute
+     */
+    public IndexOnlyScanOperator(BPlusTree tree, KeyRange range, Schema schema) {
+        this.tree = tree;
+        this.range = range;
+        this.schema = schema;
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public String describe() {
+        return "Index Only Scan " + schema.getAttributes().get(0).getName() + " " + range;
+    }
+
+    @Override
+    public void open() throws DBException {
+        entries = range.isEmpty() ? List.of() : tree.range(range.getLow(), range.getHigh());
+        position = 0;
+    }
+
+    @Override
+    public Record next() {
+        if (entries == null || position >= entries.size()) return null;
+        Record r = new Record();
+        r.addAttribute(entries.get(position++).key);
+        return r;
+    }
+
+    @Override
+    public void close() {
+        entries = null;
+    }
+}
@@ -0,0 +1,106 @@
+package exec;
+
+import buffer.BufferManager;
+import index.BPlusTree;
+import model.Record;
+import model.Schema;
+import model.Value;
+import parser.KeyRange;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Returns a table's records in the order of a B+tree index on one of its
+ * attributes. The entries of one key are visited a page at a time, in page
+ * order, so records with equal keys come out in primary key order like a
+ * sort would leave them.
+ */
+public class IndexOrderScanOperator implements Operator {
+
+    private final BPlusTree tree;
+    private final KeyRange range;
+    private final int attrIndex;
+    private final List<Integer> pageIds;
+    private final Schema schema;
+    private final BufferManager buffer;
+
+    private Map<Integer, Integer> position;
+    private List<BPlusTree.Entry> entries;
+    private int entry;
+    private final List<Record> pending = new ArrayList<>(); // records of the current key
+    private int pendingIndex;
+
+    /**
+     * @param range the keys wanted
+     * @param attrIndex position of the indexed attribute in the table's schema
+     * @param pageIds the table's pages that may hold wanted records, in table order
+     */
+    public IndexOrderScanOperator(BPlusTree tree, KeyRange range, int attrIndex,
+                                  List<Integer> pageIds, Schema schema, BufferManager buffer) {
+        this.tree = tree;
+        this.range = range;
+        this.attrIndex = attrIndex;
+        this.pageIds = pageIds;
+        this.schema = schema;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public String describe() {
+        return "Index Order Scan " + schema.getAttributes().get(attrIndex).getName() + " " + range
+                + " (" + pageIds.size() + " pages)";
+    }
+
+    @Override
+    public void open() throws DBException {
+        position = new HashMap<>();
+        for (int pid : pageIds) {
+            position.put(pid, position.size());
+        }
+        entries = range.isEmpty() ? List.of() : tree.range(range.getLow(), range.getHigh());
+        entry = 0;
+        pending.clear();
+        pendingIndex = 0;
+    }
+
+    @Override
+    public Record next() throws DBException {
+        while (pendingIndex >= pending.size()) {
+            if (entries == null || entry >= entries.size()) return null;
+            pending.clear();
+            pendingIndex = 0;
+
+            Value key = entries.get(entry).key;
+            TreeSet<Integer> pages = new TreeSet<>(Comparator.comparing(position::get));
+            for (; entry < entries.size() && Value.compareRaw(entries.get(entry).key.getRaw(), key.getRaw()) == 0; entry++) {
+                int pid = entries.get(entry).rid.getPageId();
+                if (position.containsKey(pid)) pages.add(pid);
+            }
+            for (int pid : pages) {
+                for (Record r : buffer.getPage(pid).getRecords()) {
+                    if (Value.compareRaw(r.getValue(attrIndex).getRaw(), key.getRaw()) == 0) {
+                        pending.add(r);
+                    }
+                }
+            }
+        }
+        return pending.get(pendingIndex++);
+    }
+
+    @Override
+    public void close() {
+        entries = null;
+        pending.clear();
+    }
+}
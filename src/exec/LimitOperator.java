@@ -0,0 +1,75 @@
+package exec;
+
+import model.Record;
+import model.Schema;
+import util.DBException;
+
+import java.util.List;
+
+/**
+ * Skips the first records of its child and passes on at most a given number
+ * of the ones after them. It stops asking its child for records once it has
+ * passed on enough, so nothing below it reads further than it has to.
+ */
+public class LimitOperator implements Operator {
+
+    private final Operator child;
+    private final int limit;
+    private final int offset;
+    private int returned;
+    private boolean skipped;
+
+    /**
+     * @param limit the most records to pass on
+     * @param offset the number of records to skip first
+     */
+    public LimitOperator(Operator child, int limit, int offset) {
+        this.child = child;
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    @Override
+    public Schema schema() {
+        return child.schema();
+    }
+
+    @Override
+    public String describe() {
+        return (offset == 0) ? "Limit " + limit : "Limit " + limit + " offset " + offset;
+    }
+
+    @Override
+    public List<Operator> children() {
+        return List.of(child);
+    }
+
+    @Override
+    public void open() throws DBException {
+        returned = 0;
+        skipped = false;
+        child.open();
+    }
+
+    @Override
+    public Record next() throws DBException {
+        if (returned >= limit) return null;
+        if (!skipped) {
+            skipped = true;
+            for (int i = 0; i < offset; i++) {
+                if (child.next() == null) {
+                    returned = limit;
+                    return null;
+                }
+            }
+        }
+        Record r = child.next();
+        if (r != null) returned++;
+        return r;
+    }
+
+    @Override
+    public void close() throws DBException {
+        child.close();
+    }
+}
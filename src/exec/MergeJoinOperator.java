@@ -0,0 +1,126 @@
+package exec;
+
+import model.Record;
+import model.Schema;
+import model.Value;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Equi-join of two inputs that both come sorted on their join attribute.
+ * The inputs are walked side by side, each read once; the right records
+ * sharing a key are held while the left records with that key are paired
+ * with them. Output comes out sorted on the join key.
+ * <br>
+ * A table's pages hold its records in primary key order, so a scan of the
+ * table is already sorted on its primary key and a join on primary keys
+ * needs no sorting at all. Any other input is put through a SortOperator
+ * first. Records with a null key never match.
+ */
+public class MergeJoinOperator implements Operator {
+
+    private final Operator left;
+    private final Operator right;
+    private final int leftKey;
+    private final int rightKey;
+    private final Schema schema;
+
+    private Record leftRecord;
+    private Record rightRecord;
+    private final List<Record> group = new ArrayList<>(); // right records with the current key
+    private Object groupKey;
+    private int groupIndex;
+
+    /**
+     * @param left input sorted on leftKey
+     * @param right input sorted on rightKey
+     */
+    public MergeJoinOperator(Operator left, Operator right, int leftKey, int rightKey) {
+        this.left = left;
+        this.right = right;
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+        this.schema = ProductOperator.combine(left.schema(), right.schema());
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public String describe() {
+        return "Merge Join " + left.schema().getAttributes().get(leftKey).getName() + " == "
+                + right.schema().getAttributes().get(rightKey).getName();
+    }
+
+    @Override
+    public List<Operator> children() {
+        return List.of(left, right);
+    }
+
+    @Override
+    public void open() throws DBException {
+        left.open();
+        right.open();
+        group.clear();
+        leftRecord = nextWithKey(left, leftKey);
+        rightRecord = nextWithKey(right, rightKey);
+    }
+
+    @Override
+    public Record next() throws DBException {
+        while (true) {
+            if (!group.isEmpty()) {
+                if (groupIndex < group.size()) {
+                    return ProductOperator.combine(leftRecord, group.get(groupIndex++));
+                }
+                // the next left record may have the same key and need the group again
+                leftRecord = nextWithKey(left, leftKey);
+                groupIndex = 0;
+                if (leftRecord != null && Value.compareRaw(key(leftRecord, leftKey), groupKey) == 0) continue;
+                group.clear();
+            }
+            if (leftRecord == null || rightRecord == null) return null;
+
+            int c = Value.compareRaw(key(leftRecord, leftKey), key(rightRecord, rightKey));
+            if (c < 0) {
+                leftRecord = nextWithKey(left, leftKey);
+            } else if (c > 0) {
+                rightRecord = nextWithKey(right, rightKey);
+            } else {
+                groupKey = key(rightRecord, rightKey);
+                while (rightRecord != null && Value.compareRaw(key(rightRecord, rightKey), groupKey) == 0) {
+                    group.add(rightRecord);
+                    rightRecord = nextWithKey(right, rightKey);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws DBException {
+        left.close();
+        right.close();
+        group.clear();
+        leftRecord = null;
+        rightRecord = null;
+    }
+
+    private static Object key(Record r, int keyIndex) {
+        return r.getValue(keyIndex).getRaw();
+    }
+
+    /**
+     * @return the input's next record with a non-null key, or null at its end
+     */
+    private static Record nextWithKey(Operator input, int keyIndex) throws DBException {
+        Record r = input.next();
+        while (r != null && key(r, keyIndex) == null) {
+            r = input.next();
+        }
+        return r;
+    }
+}
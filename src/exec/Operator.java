@@ -0,0 +1,52 @@
+package exec;
+
+import model.Record;
+import model.Schema;
+import util.DBException;
+
+import java.util.List;
+
+/**
+ * One step of a query plan, in the iterator (Volcano) model. The caller opens
+ * it, pulls records with next() until it returns null and then closes it.
+ * Operators pull from their children the same way, so records stream through
+ * the whole plan one at a time instead of being copied into a temporary table
+ * between steps.
+ */
+public interface Operator {
+
+    /**
+     * @return the schema of the records next() returns
+     */
+    Schema schema();
+
+    /**
+     * Gets ready to return records from the start. Opening an operator again
+     * after closing it starts it over.
+     */
+    void open() throws DBException;
+
+    /**
+     * @return the next record, or null once there are no more
+     */
+    Record next() throws DBException;
+
+    /**
+     * Releases whatever open() took. Safe to call on an operator that isn't open.
+     */
+    void close() throws DBException;
+
+    /**
+     * @return one line saying what the operator does, for EXPLAIN
+     */
+    default String describe() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * @return the operators this one reads from, left to right
+     */
+    default List<Operator> children() {
+        return List.of();
+    }
+}
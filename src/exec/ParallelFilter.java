@@ -0,0 +1,196 @@
+package exec;
+
+import buffer.BufferManager;
+import model.Page;
+import model.Record;
+import model.Schema;
+import parser.CompiledWhere;
+import parser.IWhereTree;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Checks a WHERE tree against the records of a list of pages on every core.
+ * <br>
+ * The buffer isn't safe to use from more than one thread, so the calling
+ * thread reads the pages, a batch at a time, and only the checking is handed
+ * out: the batch is split into runs of pages that a fork/join pool works
+ * through. The tree and schema are only read, and every record is checked by
+ * one thread, so the columns it decodes on first access are its own. The
+ * results are handed back in page order, so callers see the same records in
+ * the same order as a scan on one thread would give them. Each thread checks
+ * its records through IWhereTree.select(), a vector of them at a time, with
+ * the tree compiled into a CompiledWhere once for the whole scan.
+ * <br>
+ * Batches too small to be worth splitting, and every batch on a machine with
+ * one core, are checked on the calling thread.
+ */
+public class ParallelFilter {
+
+    // records read before a batch is checked, bounding how many are held at once
+    private static final int BATCH_RECORDS = 8192;
+    // fewest records worth handing to another thread
+    private static final int SPLIT_RECORDS = 512;
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final ForkJoinPool POOL = (CORES > 1) ? new ForkJoinPool(CORES) : null;
+
+    /**
+     * Told the result for each page, in the order the pages were given
+     */
+    public interface PageConsumer {
+        /**
+         * @param records the page's records as read
+         * @param matches for each record, whether it satisfies the tree
+         */
+        void accept(int pid, List<Record> records, boolean[] matches) throws DBException;
+    }
+
+    private final List<Integer> pageIds;
+    private final IWhereTree where;
+    private final Schema schema;
+    private final BufferManager buffer;
+    private int next;
+
+    /**
+     * @param pageIds pages to read, in the order to read them
+     * @param where the tree to check; every record matches if it is null
+     * @param schema schema of the records on the pages
+     */
+    public ParallelFilter(List<Integer> pageIds, IWhereTree where, Schema schema, BufferManager buffer) {
+        this.pageIds = pageIds;
+        this.where = CompiledWhere.compile(where, schema);
+        this.schema = schema;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Hands every page to the consumer, one batch after another
+     */
+    public void forEach(PageConsumer consumer) throws DBException {
+        while (nextBatch(consumer)) {
+        }
+    }
+
+    /**
+     * Reads the next batch of pages, checks the tree against their records
+     * and hands the pages to the consumer. The next batch isn't read before
+     * this returns, so the consumer may change the pages it is handed.
+     * @return false, without calling the consumer, once every page has been handed over
+     * @throws DBException the error of the first record, in page order, that couldn't be checked
+     */
+    public boolean nextBatch(PageConsumer consumer) throws DBException {
+        if (next >= pageIds.size()) return false;
+
+        List<Integer> pids = new ArrayList<>();
+        List<List<Record>> pages = new ArrayList<>();
+        int records = 0;
+        while (next < pageIds.size() && records < BATCH_RECORDS) {
+            int pid = pageIds.get(next++);
+            Page p = buffer.getPage(pid);
+            // a copy, the consumer may change the page itself
+            pages.add(new ArrayList<>(p.getRecords()));
+            pids.add(pid);
+            records += p.size();
+        }
+
+        boolean[][] matches = matches(pages, records, where, schema);
+        for (int i = 0; i < pages.size(); i++) {
+            consumer.accept(pids.get(i), pages.get(i), matches[i]);
+        }
+        return true;
+    }
+
+    private static boolean[][] matches(List<List<Record>> pages, int records, IWhereTree where, Schema schema)
+            throws DBException {
+        boolean[][] matches = new boolean[pages.size()][];
+        DBException[] errors = new DBException[pages.size()];
+        Check all = new Check(pages, 0, pages.size(), records, where, schema, matches, errors);
+        if (POOL == null || records < 2 * SPLIT_RECORDS) {
+            all.compute();
+        } else {
+            POOL.invoke(all);
+        }
+        for (DBException e : errors) {
+            if (e != null) throw e;
+        }
+        return matches;
+    }
+
+    // checks pages [from, to), halving the range while both halves are worth a thread
+    private static class Check extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<Record>> pages;
+        private final int from;
+        private final int to;
+        private final int records;
+        private final IWhereTree where;
+        private final Schema schema;
+        private final boolean[][] matches;
+        private final DBException[] errors;
+
+        Check(List<List<Record>> pages, int from, int to, int records, IWhereTree where, Schema schema,
+              boolean[][] matches, DBException[] errors) {
+            this.pages = pages;
+            this.from = from;
+            this.to = to;
+            this.records = records;
+            this.where = where;
+            this.schema = schema;
+            this.matches = matches;
+            this.errors = errors;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && records >= 2 * SPLIT_RECORDS && getPool() != null) {
+                int mid = from;
+                int firstHalf = 0;
+                while (mid < to - 1 && firstHalf < records / 2) {
+                    firstHalf += pages.get(mid++).size();
+                }
+                invokeAll(new Check(pages, from, mid, firstHalf, where, schema, matches, errors),
+                        new Check(pages, mid, to, records - firstHalf, where, schema, matches, errors));
+                return;
+            }
+            // the range's records end to end, checked a vector at a time
+            List<Record> all = new ArrayList<>(records);
+            for (int i = from; i < to; i++) {
+                all.addAll(pages.get(i));
+                matches[i] = new boolean[pages.get(i).size()];
+            }
+            int[] sel = new int[FilterOperator.BATCH_SIZE];
+            int page = from;
+            int pageStart = 0;
+            for (int start = 0; start < all.size(); start += sel.length) {
+                int n = Math.min(sel.length, all.size() - start);
+                for (int i = 0; i < n; i++) {
+                    sel[i] = start + i;
+                }
+                while (start >= pageStart + matches[page].length) {
+                    pageStart += matches[page++].length;
+                }
+                try {
+                    n = (where == null) ? n : where.select(schema, all, sel, n);
+                } catch (DBException e) {
+                    errors[page] = e;
+                    return;
+                }
+                // selected positions come out in order, so the page only moves forward
+                int p = page;
+                int first = pageStart;
+                for (int i = 0; i < n; i++) {
+                    while (sel[i] >= first + matches[p].length) {
+                        first += matches[p++].length;
+                    }
+                    matches[p][sel[i] - first] = true;
+                }
+            }
+        }
+    }
+}
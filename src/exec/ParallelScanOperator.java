@@ -0,0 +1,87 @@
+package exec;
+
+import buffer.BufferManager;
+import model.Record;
+import model.Schema;
+import parser.AttrNode;
+import parser.IWhereTree;
+import util.DBException;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Returns the records of a list of pages that satisfy a WHERE tree, checking
+ * them a batch of pages at a time on every core through a ParallelFilter.
+ * Records come out in the same order as a ScanOperator under a
+ * FilterOperator would return them.
+ */
+public class ParallelScanOperator implements Operator {
+
+    private final String table;
+    private final List<Integer> pageIds;
+    private final Schema schema;
+    private final IWhereTree where;
+    private final BufferManager buffer;
+
+    private ParallelFilter filter;
+    private final ArrayDeque<Record> matched = new ArrayDeque<>();
+
+    /**
+     * @param table name of the table the pages belong to
+     * @param pageIds pages to read, in the order to read them
+     * @param schema schema of the records on them, which the tree names attributes by
+     */
+    public ParallelScanOperator(String table, List<Integer> pageIds, Schema schema, IWhereTree where,
+                                BufferManager buffer) {
+        this.table = table;
+        this.pageIds = pageIds;
+        this.schema = schema;
+        this.where = where;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public String describe() {
+        return "Parallel Scan " + table + " (" + pageIds.size() + " pages) Filter " + where;
+    }
+
+    /**
+     * Like FilterOperator, checks that every attribute the tree names exists
+     */
+    @Override
+    public void open() throws DBException {
+        for (AttrNode attr : IWhereTree.attributeNodes(where)) {
+            if (attr.getIndex(schema) == -1) {
+                throw new DBException("Attribute {" + attr.attrName + "} not found. Return value of -1.");
+            }
+        }
+        filter = new ParallelFilter(pageIds, where, schema, buffer);
+        matched.clear();
+    }
+
+    @Override
+    public Record next() throws DBException {
+        while (matched.isEmpty()) {
+            if (filter == null || !filter.nextBatch(this::keep)) return null;
+        }
+        return matched.poll();
+    }
+
+    @Override
+    public void close() {
+        filter = null;
+        matched.clear();
+    }
+
+    private void keep(int pid, List<Record> records, boolean[] matches) {
+        for (int i = 0; i < records.size(); i++) {
+            if (matches[i]) matched.add(records.get(i));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package exec;
+
+import model.Attribute;
+import model.Record;
+import model.Schema;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cartesian product of two inputs: every left record followed by every right
+ * record, the right input being started over for each left record.
+ */
+public class ProductOperator implements Operator {
+
+    private final Operator left;
+    private final Operator right;
+    private final Schema schema;
+
+    private Record current; // left record being paired, null when a new one is needed
+
+    public ProductOperator(Operator left, Operator right) {
+        this.left = left;
+        this.right = right;
+        this.schema = combine(left.schema(), right.schema());
+    }
+
+    /**
+     * @return the attributes of one schema followed by those of the other
+     */
+    public static Schema combine(Schema left, Schema right) {
+        List<Attribute> attrs = new ArrayList<>(left.getAttributes());
+        attrs.addAll(right.getAttributes());
+        return new Schema(attrs);
+    }
+
+    /**
+     * @return a record holding the values of one record followed by those of the other
+     */
+    public static Record combine(Record left, Record right) {
+        Record combined = new Record();
+        for (int i = 0; i < left.size(); i++) {
+            combined.addAttribute(left.getValue(i));
+        }
+        for (int i = 0; i < right.size(); i++) {
+            combined.addAttribute(right.getValue(i));
+        }
+        return combined;
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public String describe() {
+        return "Nested Loop";
+    }
+
+    @Override
+    public List<Operator> children() {
+        return List.of(left, right);
+    }
+
+    @Override
+    public void open() throws DBException {
+        left.open();
+        current = null;
+    }
+
+    @Override
+    public Record next() throws DBException {
+        while (true) {
+            if (current == null) {
+                current = left.next();
+                if (current == null) return null;
+                right.close();
+                right.open();
+            }
+            Record r = right.next();
+            if (r != null) {
+                return combine(current, r);
+            }
+            current = null;
+        }
+    }
+
+    @Override
+    public void close() throws DBException {
+        left.close();
+        right.close();
+    }
+}
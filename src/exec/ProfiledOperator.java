@@ -0,0 +1,104 @@
+package exec;
+
+import buffer.BufferManager;
+import model.Record;
+import model.Schema;
+import util.DBException;
+
+import java.util.List;
+
+/**
+ * Wraps an operator to measure it for EXPLAIN ANALYZE: records returned, time
+ * spent in open/next/close, page requests answered from the buffer (hits) and
+ * from disk (misses), and temporary pages started. The figures include the
+ * operator's inputs, which are wrapped and measured on their own as well.
+ */
+public class ProfiledOperator implements Operator {
+
+    private final Operator op;
+    private final BufferManager buffer;
+
+    private long rows;
+    private long nanos;
+    private long hits;
+    private long misses;
+    private long tempPages;
+
+    public ProfiledOperator(Operator op, BufferManager buffer) {
+        this.op = op;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return the operator wrapped for measuring if profile is set, otherwise the operator itself
+     */
+    public static Operator wrap(Operator op, boolean profile, BufferManager buffer) {
+        return profile ? new ProfiledOperator(op, buffer) : op;
+    }
+
+    @Override
+    public Schema schema() {
+        return op.schema();
+    }
+
+    @Override
+    public String describe() {
+        return op.describe();
+    }
+
+    @Override
+    public List<Operator> children() {
+        return op.children();
+    }
+
+    /**
+     * @return what was measured, in the form EXPLAIN ANALYZE prints it
+     */
+    public String measurements() {
+        return String.format("rows=%d time=%.3fms pages=%d hits=%d misses=%d temp pages=%d",
+                rows, nanos / 1e6, hits + misses, hits, misses, tempPages);
+    }
+
+    @Override
+    public void open() throws DBException {
+        long[] start = start();
+        try {
+            op.open();
+        } finally {
+            stop(start);
+        }
+    }
+
+    @Override
+    public Record next() throws DBException {
+        long[] start = start();
+        try {
+            Record r = op.next();
+            if (r != null) rows++;
+            return r;
+        } finally {
+            stop(start);
+        }
+    }
+
+    @Override
+    public void close() throws DBException {
+        long[] start = start();
+        try {
+            op.close();
+        } finally {
+            stop(start);
+        }
+    }
+
+    private long[] start() {
+        return new long[]{System.nanoTime(), buffer.getHits(), buffer.getMisses(), buffer.getPagesCreated()};
+    }
+
+    private void stop(long[] start) {
+        nanos += System.nanoTime() - start[0];
+        hits += buffer.getHits() - start[1];
+        misses += buffer.getMisses() - start[2];
+        tempPages += buffer.getPagesCreated() - start[3];
+    }
+}
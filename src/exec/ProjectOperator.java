@@ -0,0 +1,72 @@
+package exec;
+
+import model.Attribute;
+import model.Record;
+import model.Schema;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps only some of the attributes of its child's records, in a given order.
+ */
+public class ProjectOperator implements Operator {
+
+    private final Operator child;
+    private final int[] columns;
+    private final Schema schema;
+
+    /**
+     * @param columns positions in the child's schema of the attributes to keep
+     */
+    public ProjectOperator(Operator child, int[] columns) {
+        this.child = child;
+        this.columns = columns;
+        List<Attribute> attrs = new ArrayList<>();
+        for (int c : columns) {
+            attrs.add(child.schema().getAttributes().get(c));
+        }
+        this.schema = new Schema(attrs);
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public String describe() {
+        StringBuilder names = new StringBuilder();
+        for (Attribute a : schema.getAttributes()) {
+            names.append(names.length() == 0 ? "" : ", ").append(a.getName());
+        }
+        return "Project " + names;
+    }
+
+    @Override
+    public List<Operator> children() {
+        return List.of(child);
+    }
+
+    @Override
+    public void open() throws DBException {
+        child.open();
+    }
+
+    @Override
+    public Record next() throws DBException {
+        Record r = child.next();
+        if (r == null) return null;
+        Record projected = new Record();
+        for (int c : columns) {
+            projected.addAttribute(r.getValue(c));
+        }
+        return projected;
+    }
+
+    @Override
+    public void close() throws DBException {
+        child.close();
+    }
+}
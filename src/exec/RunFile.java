@@ -0,0 +1,98 @@
+package exec;
+
+import buffer.BufferManager;
+import model.Page;
+import model.Record;
+import storage.StorageManager;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records written one after another to temporary pages and read back in the
+ * same order, for operators whose input doesn't fit in memory. The pages go
+ * through the buffer like any other, so a run only reaches the disk if it is
+ * pushed out of it, and they are handed back to storage by free().
+ */
+public class RunFile {
+
+    private final StorageManager storage;
+    private final BufferManager buffer;
+    private final List<Integer> pageIds = new ArrayList<>();
+    private int lastCount;
+    private int lastBytes;
+    private long records;
+
+    public RunFile(StorageManager storage, BufferManager buffer) {
+        this.storage = storage;
+        this.buffer = buffer;
+    }
+
+    public void add(Record record) throws DBException {
+        int size = buffer.recordSizeBytes(record);
+        if (pageIds.isEmpty() || BufferManager.pageBytesNeeded(lastCount + 1, lastBytes + size) > buffer.getPageSize()) {
+            int pid = storage.allocatePage();
+            buffer.newPage(pid);
+            pageIds.add(pid);
+            lastCount = 0;
+            lastBytes = 0;
+        }
+        int pid = pageIds.get(pageIds.size() - 1);
+        buffer.getPage(pid).addRecord(record);
+        buffer.markDirty(pid);
+        lastCount++;
+        lastBytes += size;
+        records++;
+    }
+
+    /**
+     * @return the number of records written
+     */
+    public long size() {
+        return records;
+    }
+
+    public int pageCount() {
+        return pageIds.size();
+    }
+
+    /**
+     * @return a reader positioned at the first record
+     */
+    public Reader reader() {
+        return new Reader();
+    }
+
+    public void free() throws DBException {
+        for (int pid : pageIds) {
+            buffer.discardPage(pid);
+            storage.freePage(pid);
+        }
+        pageIds.clear();
+        records = 0;
+    }
+
+    /**
+     * Reads a run from the start, a page at a time.
+     */
+    public class Reader {
+        private int page;
+        private int slot;
+
+        /**
+         * @return the next record, or null at the end of the run
+         */
+        public Record next() throws DBException {
+            while (page < pageIds.size()) {
+                Page p = buffer.getPage(pageIds.get(page));
+                if (slot < p.size()) {
+                    return p.getRecords().get(slot++);
+                }
+                page++;
+                slot = 0;
+            }
+            return null;
+        }
+    }
+}
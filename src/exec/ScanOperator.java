@@ -0,0 +1,84 @@
+package exec;
+
+import buffer.BufferManager;
+import model.Attribute;
+import model.Record;
+import model.Schema;
+import model.Table;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Returns the records of a list of pages, page by page through the buffer.
+ */
+public class ScanOperator implements Operator {
+
+    private final String table;
+    private final List<Integer> pageIds;
+    private final Schema schema;
+    private final BufferManager buffer;
+
+    private int pageIndex;
+    private List<Record> records;
+    private int slot;
+
+    /**
+     * @param table name of the table the pages belong to
+     * @param pageIds pages to read, in the order to read them
+     * @param schema schema of the records on them
+     * @param buffer used to read the pages
+     */
+    public ScanOperator(String table, List<Integer> pageIds, Schema schema, BufferManager buffer) {
+        this.table = table;
+        this.pageIds = pageIds;
+        this.schema = schema;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return the table's schema with every attribute named table.attribute,
+     * the way attributes are told apart once several tables are combined
+     */
+    public static Schema qualifiedSchema(Table table) {
+        List<Attribute> attrs = new ArrayList<>();
+        for (Attribute a : table.schema().getAttributes()) {
+            String name = a.getName().contains(".") ? a.getName() : table.name() + "." + a.getName();
+            attrs.add(new Attribute(name, false, false, a.getType(), a.getDataLength()));
+        }
+        return new Schema(attrs);
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public String describe() {
+        return "Scan " + table + " (" + pageIds.size() + " pages)";
+    }
+
+    @Override
+    public void open() {
+        pageIndex = 0;
+        records = null;
+        slot = 0;
+    }
+
+    @Override
+    public Record next() throws DBException {
+        while (records == null || slot >= records.size()) {
+            if (pageIndex >= pageIds.size()) return null;
+            records = buffer.getPage(pageIds.get(pageIndex++)).getRecords();
+            slot = 0;
+        }
+        return records.get(slot++);
+    }
+
+    @Override
+    public void close() {
+        records = null;
+    }
+}
@@ -0,0 +1,316 @@
+package exec;
+
+import buffer.BufferManager;
+import model.Record;
+import model.Schema;
+import model.Value;
+import storage.StorageManager;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts its child's records on one attribute, ascending. Records with equal
+ * values keep the order the child returned them in.
+ * <br>
+ * Memory is the buffer's pages less two, one to read the input through and
+ * one to write with. Input that fits there is sorted in memory and never
+ * written out. Anything bigger is cut into sorted runs by replacement
+ * selection: a heap of that many bytes of records writes out its smallest
+ * record that can still go on the current run and takes in the next input
+ * record in its place, and a record smaller than the last one written waits
+ * for the next run. Runs come out about twice the size of memory, and input
+ * that is already nearly sorted comes out as a single run.
+ * <br>
+ * Runs are merged through a heap, at most one less than the buffer's pages at
+ * a time, in as many passes as it takes to get down to that many. next() does
+ * the last pass, so its output is never written out.
+ * <br>
+ * A sort that only has to return its first n records keeps just the n
+ * smallest seen so far, in a heap with the largest on top, and writes nothing
+ * out. Should those n not fit in memory it reads its input again and sorts it
+ * all, stopping after n.
+ */
+public class SortOperator implements Operator {
+
+    private final Operator child;
+    private final int attrIndex;
+    private final int limit;
+    private final Comparator<Record> order;
+    private final StorageManager storage;
+    private final BufferManager buffer;
+
+    private List<Record> inMemory; // the whole input, when it fit in memory
+    private int memoryIndex;
+
+    private List<RunFile> runs = new ArrayList<>();
+    private PriorityQueue<Cursor> merge;
+    private int returned;
+    private int runsWritten;
+    private int mergePasses;
+
+    /**
+     * @param attrIndex position in the child's schema of the attribute to sort on
+     */
+    public SortOperator(Operator child, int attrIndex, StorageManager storage, BufferManager buffer) {
+        this(child, attrIndex, -1, storage, buffer);
+    }
+
+    /**
+     * @param attrIndex position in the child's schema of the attribute to sort on
+     * @param limit how many of the smallest records to return, or -1 for all of them
+     */
+    public SortOperator(Operator child, int attrIndex, int limit, StorageManager storage, BufferManager buffer) {
+        this.child = child;
+        this.attrIndex = attrIndex;
+        this.limit = limit;
+        this.order = (a, b) -> Value.compareRaw(a.getValue(attrIndex).getRaw(), b.getValue(attrIndex).getRaw());
+        this.storage = storage;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return the position of an attribute for ORDERBY, matching table.attribute names by their suffix
+     * @throws DBException if the schema has no such attribute
+     */
+    public static int attributeIndex(Schema schema, String name) throws DBException {
+        for (int i = 0; i < schema.getAttributes().size(); i++) {
+            String attrName = schema.getAttributes().get(i).getName();
+            if (attrName.equals(name) || attrName.endsWith("." + name)) {
+                return i;
+            }
+        }
+        throw new DBException("ORDERBY attribute not found: " + name);
+    }
+
+    @Override
+    public Schema schema() {
+        return child.schema();
+    }
+
+    /**
+     * Once the input has gone to disk, also gives the number of runs and merge passes
+     */
+    @Override
+    public String describe() {
+        String name = "Sort " + child.schema().getAttributes().get(attrIndex).getName();
+        if (limit != -1) {
+            name += " top " + limit;
+        }
+        return (runsWritten == 0) ? name : name + " (runs=" + runsWritten + " merge passes=" + mergePasses + ")";
+    }
+
+    @Override
+    public List<Operator> children() {
+        return List.of(child);
+    }
+
+    @Override
+    public void open() throws DBException {
+        close();
+        returned = 0;
+        runsWritten = 0;
+        mergePasses = 0;
+        child.open();
+        if (limit != -1 && !keepSmallest()) {
+            child.close();
+            child.open();
+        }
+        if (inMemory == null) {
+            makeRuns();
+        }
+        child.close();
+        if (inMemory != null) return;
+
+        // one page for each run being read and one for the run being written
+        int fanIn = Math.max(2, buffer.getCapacity() - 1);
+        while (runs.size() > fanIn) {
+            List<RunFile> merged = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += fanIn) {
+                List<RunFile> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+                RunFile out = new RunFile(storage, buffer);
+                PriorityQueue<Cursor> heap = startMerge(group);
+                Record r;
+                while ((r = nextMerged(heap)) != null) {
+                    out.add(r);
+                }
+                for (RunFile run : group) {
+                    run.free();
+                }
+                merged.add(out);
+            }
+            runs = merged;
+            mergePasses++;
+        }
+        merge = startMerge(runs);
+        mergePasses++;
+    }
+
+    @Override
+    public Record next() throws DBException {
+        if (returned == limit) return null;
+        Record r;
+        if (inMemory != null) {
+            r = (memoryIndex < inMemory.size()) ? inMemory.get(memoryIndex++) : null;
+        } else {
+            r = (merge == null) ? null : nextMerged(merge);
+        }
+        if (r != null) returned++;
+        return r;
+    }
+
+    @Override
+    public void close() throws DBException {
+        for (RunFile run : runs) {
+            run.free();
+        }
+        runs = new ArrayList<>();
+        merge = null;
+        inMemory = null;
+    }
+
+    /**
+     * Reads the whole input keeping only its limit smallest records, sorted into inMemory
+     * @return false, leaving inMemory null, if those records don't fit in memory
+     */
+    private boolean keepSmallest() throws DBException {
+        long memory = (long) Math.max(1, buffer.getCapacity() - 2) * buffer.getPageSize();
+
+        // largest value on top, and of equal values the latest read, which is the first to go
+        PriorityQueue<Pending> heap = new PriorityQueue<>((a, b) -> {
+            int c = order.compare(b.record, a.record);
+            return (c != 0) ? c : Long.compare(b.seq, a.seq);
+        });
+        long seq = 0;
+        long bytes = 0;
+        Record r;
+        while ((r = child.next()) != null) {
+            heap.add(new Pending(r, 0, seq++));
+            bytes += buffer.recordSizeBytes(r);
+            if (heap.size() > limit) {
+                bytes -= buffer.recordSizeBytes(heap.poll().record);
+            }
+            if (bytes > memory) return false;
+        }
+
+        Record[] sorted = new Record[heap.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = heap.poll().record;
+        }
+        inMemory = new ArrayList<>(List.of(sorted));
+        memoryIndex = 0;
+        return true;
+    }
+
+    /**
+     * Reads the whole input, sorting it into inMemory if it fits and out to runs if not
+     */
+    private void makeRuns() throws DBException {
+        long memory = (long) Math.max(1, buffer.getCapacity() - 2) * buffer.getPageSize();
+
+        // by run, then value, then input order so equal values keep their order
+        PriorityQueue<Pending> heap = new PriorityQueue<>((a, b) -> {
+            if (a.run != b.run) return Integer.compare(a.run, b.run);
+            int c = order.compare(a.record, b.record);
+            return (c != 0) ? c : Long.compare(a.seq, b.seq);
+        });
+        long seq = 0;
+        long bytes = 0;
+        Record r;
+        while (bytes <= memory && (r = child.next()) != null) {
+            heap.add(new Pending(r, 0, seq++));
+            bytes += buffer.recordSizeBytes(r);
+        }
+        if (bytes <= memory) {
+            inMemory = new ArrayList<>(heap.size());
+            while (!heap.isEmpty()) {
+                inMemory.add(heap.poll().record);
+            }
+            memoryIndex = 0;
+            return;
+        }
+
+        int run = 0;
+        RunFile out = new RunFile(storage, buffer);
+        while (!heap.isEmpty()) {
+            Pending smallest = heap.poll();
+            if (smallest.run != run) {
+                runs.add(out);
+                out = new RunFile(storage, buffer);
+                run = smallest.run;
+            }
+            out.add(smallest.record);
+            bytes -= buffer.recordSizeBytes(smallest.record);
+
+            while (bytes <= memory && (r = child.next()) != null) {
+                // anything smaller than what was just written has to wait for the next run
+                int nextRun = (order.compare(r, smallest.record) < 0) ? run + 1 : run;
+                heap.add(new Pending(r, nextRun, seq++));
+                bytes += buffer.recordSizeBytes(r);
+            }
+        }
+        runs.add(out);
+        runsWritten = runs.size();
+    }
+
+    /**
+     * @return a heap over the runs' first records. Ties go to the earlier
+     * run, which holds the earlier records.
+     */
+    private PriorityQueue<Cursor> startMerge(List<RunFile> group) throws DBException {
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, group.size()), (a, b) -> {
+            int c = order.compare(a.head, b.head);
+            return (c != 0) ? c : Integer.compare(a.run, b.run);
+        });
+        for (int i = 0; i < group.size(); i++) {
+            Cursor cursor = new Cursor(group.get(i).reader(), i);
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        return heap;
+    }
+
+    private static Record nextMerged(PriorityQueue<Cursor> heap) throws DBException {
+        Cursor smallest = heap.poll();
+        if (smallest == null) return null;
+        Record result = smallest.head;
+        if (smallest.advance()) {
+            heap.add(smallest);
+        }
+        return result;
+    }
+
+    // a record waiting in the replacement selection heap for its run
+    private static class Pending {
+        final Record record;
+        final int run;
+        final long seq;
+
+        Pending(Record record, int run, long seq) {
+            this.record = record;
+            this.run = run;
+            this.seq = seq;
+        }
+    }
+
+    // a run being merged and the record at its front
+    private static class Cursor {
+        final RunFile.Reader reader;
+        final int run;
+        Record head;
+
+        Cursor(RunFile.Reader reader, int run) {
+            this.reader = reader;
+            this.run = run;
+        }
+
+        boolean advance() throws DBException {
+            head = reader.next();
+            return head != null;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package index;
+
+import buffer.BufferManager;
+import model.Page;
+import model.Record;
+import model.Record_ID;
+import model.Value;
+import storage.StorageManager;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Disk-resident B+tree mapping keys to Record_IDs.
+ * Every node is an ordinary Page held by the BufferManager, so nodes are
+ * cached, evicted and written back exactly like table pages.
+ * <br>
+ * Node layout, one Record per slot:
+ * - slot 0 is a header [isLeaf, link]. For a leaf, link is the pageId of the
+ *   next leaf (-1 for the last one). For an internal node it is the leftmost child.
+ * - leaf entries are [key, pageId, slotId]
+ * - internal entries are [key, child], where child holds the keys >= key
+ * <br>
+ * Duplicate keys are allowed. Deletes don't rebalance the tree; a leaf that
+ * goes empty stays in the chain and searches just walk past it.
+ */
+public class BPlusTree implements Index {
+
+    private final StorageManager storage;
+    private final BufferManager buffer;
+    private int rootPid;
+
+    /**
+     * Creates a new, empty tree
+     * @param storage used to allocate node pages
+     * @param buffer used to read and write node pages
+     * @throws DBException if the root page can't be allocated
+     */
+    public BPlusTree(StorageManager storage, BufferManager buffer) throws DBException {
+        this.storage = storage;
+        this.buffer = buffer;
+        this.rootPid = newNode(true, -1);
+    }
+
+    /**
+     * Opens a tree that already exists on disk
+     * @param rootPid pageId of the root node
+     * @param storage used to allocate node pages
+     * @param buffer used to read and write node pages
+     */
+    public BPlusTree(int rootPid, StorageManager storage, BufferManager buffer) {
+        this.storage = storage;
+        this.buffer = buffer;
+        this.rootPid = rootPid;
+    }
+
+    @Override
+    public int getRootPid() {
+        return rootPid;
+    }
+
+    @Override
+    public void insert(Value key, Record_ID rid) throws DBException {
+        Split split = insertInto(rootPid, key, rid);
+        if (split != null) {
+            // root was split, grow the tree by one level
+            int newRoot = newNode(false, rootPid);
+            Page root = buffer.getPage(newRoot);
+            root.addRecord(internalEntry(split.key, split.pid));
+            buffer.markDirty(newRoot);
+            rootPid = newRoot;
+        }
+    }
+
+    @Override
+    public void delete(Value key, Record_ID rid) throws DBException {
+        int pid = findLeaf(key);
+        while (pid != -1) {
+            Page leaf = buffer.getPage(pid);
+            List<Record> entries = leaf.getRecords();
+            for (int i = lowerBound(entries, key); i < entries.size(); i++) {
+                Record e = entries.get(i);
+                if (compare(e.getValue(0), key) != 0) return;
+                if (rid == null || (Integer) e.getValue(1).getRaw() == rid.getPageId()) {
+                    leaf.removeRecordAt(i);
+                    buffer.markDirty(pid);
+                    return;
+                }
+            }
+            pid = link(leaf);
+        }
+    }
+
+    @Override
+    public List<Record_ID> search(Value key) throws DBException {
+        List<Record_ID> result = new ArrayList<>();
+        int pid = findLeaf(key);
+        while (pid != -1) {
+            Page leaf = buffer.getPage(pid);
+            List<Record> entries = leaf.getRecords();
+            for (int i = lowerBound(entries, key); i < entries.size(); i++) {
+                Record e = entries.get(i);
+                if (compare(e.getValue(0), key) != 0) return result;
+                result.add(toRid(e));
+            }
+            pid = link(leaf);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the entry with the smallest key that is >= the given key
+     * @param key the key to look for
+     * @return the Record_ID of that entry, or null if every key is smaller
+     * @throws DBException if a node can't be read
+     */
+    public Record_ID ceiling(Value key) throws DBException {
+        int pid = findLeaf(key);
+        while (pid != -1) {
+            Page leaf = buffer.getPage(pid);
+            List<Record> entries = leaf.getRecords();
+            int i = lowerBound(entries, key);
+            if (i < entries.size()) {
+                return toRid(entries.get(i));
+            }
+            pid = link(leaf);
+        }
+        return null;
+    }
+
+    /**
+     * An entry of a leaf, as handed out by range()
+     */
+    public static class Entry {
+        public final Value key;
+        public final Record_ID rid;
+
+        Entry(Value key, Record_ID rid) {
+            this.key = key;
+            this.rid = rid;
+        }
+    }
+
+    /**
+     * Walks the leaf chain for every entry with a key between two bounds, both inclusive
+     * @param low smallest key wanted, or null to start at the first entry
+     * @param high largest key wanted, or null to go to the last entry
+     * @return the entries in key order
+     * @throws DBException if a node can't be read
+     */
+    public List<Entry> range(Value low, Value high) throws DBException {
+        List<Entry> result = new ArrayList<>();
+        int pid = (low == null) ? firstLeaf() : findLeaf(low);
+        while (pid != -1) {
+            Page leaf = buffer.getPage(pid);
+            List<Record> entries = leaf.getRecords();
+            for (int i = (low == null) ? 1 : lowerBound(entries, low); i < entries.size(); i++) {
+                Record e = entries.get(i);
+                if (high != null && compare(e.getValue(0), high) > 0) return result;
+                result.add(new Entry(e.getValue(0), toRid(e)));
+            }
+            // later leaves start past low, take them whole
+            low = null;
+            pid = link(leaf);
+        }
+        return result;
+    }
+
+    /**
+     * @return the pageIds of every node in the tree, so they can be freed
+     * @throws DBException if a node can't be read
+     */
+    @Override
+    public List<Integer> getPageIds() throws DBException {
+        List<Integer> pids = new ArrayList<>();
+        pids.add(rootPid);
+        for (int i = 0; i < pids.size(); i++) {
+            Page node = buffer.getPage(pids.get(i));
+            if (isLeaf(node)) continue;
+            List<Record> entries = node.getRecords();
+            for (int slot = 0; slot < entries.size(); slot++) {
+                pids.add(childAt(node, slot));
+            }
+        }
+        return pids;
+    }
+
+    // -------- insert helpers --------
+
+    private static class Split {
+        final Value key;
+        final int pid;
+
+        Split(Value key, int pid) {
+            this.key = key;
+            this.pid = pid;
+        }
+    }
+
+    private Split insertInto(int pid, Value key, Record_ID rid) throws DBException {
+        Page node = buffer.getPage(pid);
+
+        if (isLeaf(node)) {
+            Record entry = leafEntry(key, rid);
+            boolean fits = buffer.canFitRecord(node, entry);
+            node.addRecordAt(upperBound(node.getRecords(), key), entry);
+            buffer.markDirty(pid);
+            return fits ? null : splitLeaf(pid);
+        }
+
+        int childSlot = upperBound(node.getRecords(), key) - 1;
+        Split childSplit = insertInto(childAt(node, childSlot), key, rid);
+        if (childSplit == null) return null;
+
+        // re-fetch, the node may have been evicted while we were below it
+        node = buffer.getPage(pid);
+        Record entry = internalEntry(childSplit.key, childSplit.pid);
+        boolean fits = buffer.canFitRecord(node, entry);
+        node.addRecordAt(childSlot + 1, entry);
+        buffer.markDirty(pid);
+        return fits ? null : splitInternal(pid);
+    }
+
+    private Split splitLeaf(int pid) throws DBException {
+        int newPid = newNode(true, -1);
+        Page right = buffer.getPage(newPid);
+        Page left = buffer.getPage(pid);
+
+        int mid = 1 + (left.size() - 1) / 2;
+        while (left.size() > mid) {
+            right.addRecord(left.removeRecordAt(mid));
+        }
+
+        // splice the new leaf into the chain
+        setLink(right, link(left));
+        setLink(left, newPid);
+
+        buffer.markDirty(pid);
+        buffer.markDirty(newPid);
+        return new Split(right.getRecords().get(1).getValue(0), newPid);
+    }
+
+    private Split splitInternal(int pid) throws DBException {
+        Page left = buffer.getPage(pid);
+        int mid = 1 + (left.size() - 1) / 2;
+        Record pushedUp = left.getRecords().get(mid);
+
+        int newPid = newNode(false, (Integer) pushedUp.getValue(1).getRaw());
+        Page right = buffer.getPage(newPid);
+        left = buffer.getPage(pid);
+
+        left.removeRecordAt(mid);
+        while (left.size() > mid) {
+            right.addRecord(left.removeRecordAt(mid));
+        }
+
+        buffer.markDirty(pid);
+        buffer.markDirty(newPid);
+        return new Split(pushedUp.getValue(0), newPid);
+    }
+
+    // -------- navigation helpers --------
+
+    /**
+     * Descends to the leftmost leaf that could hold the key
+     */
+    private int findLeaf(Value key) throws DBException {
+        int pid = rootPid;
+        Page node = buffer.getPage(pid);
+        while (!isLeaf(node)) {
+            pid = childAt(node, lowerBound(node.getRecords(), key) - 1);
+            node = buffer.getPage(pid);
+        }
+        return pid;
+    }
+
+    private int firstLeaf() throws DBException {
+        int pid = rootPid;
+        Page node = buffer.getPage(pid);
+        while (!isLeaf(node)) {
+            pid = link(node);
+            node = buffer.getPage(pid);
+        }
+        return pid;
+    }
+
+    /**
+     * @return the first entry slot whose key is >= key, or size if there is none
+     */
+    private int lowerBound(List<Record> entries, Value key) {
+        int lo = 1;
+        int hi = entries.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(entries.get(mid).getValue(0), key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the first entry slot whose key is > key, or size if there is none
+     */
+    private int upperBound(List<Record> entries, Value key) {
+        int lo = 1;
+        int hi = entries.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(entries.get(mid).getValue(0), key) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int compare(Value a, Value b) {
+        return Value.compareRaw(a.getRaw(), b.getRaw());
+    }
+
+    // -------- node layout helpers --------
+
+    private int newNode(boolean leaf, int link) throws DBException {
+        int pid = storage.allocatePage();
+        Page node = buffer.getPage(pid);
+        Record header = new Record();
+        header.addAttribute(new Value(leaf));
+        header.addAttribute(new Value(link));
+        node.addRecord(header);
+        buffer.markDirty(pid);
+        return pid;
+    }
+
+    private boolean isLeaf(Page node) {
+        return (Boolean) node.getRecords().get(0).getValue(0).getRaw();
+    }
+
+    private int link(Page node) {
+        return (Integer) node.getRecords().get(0).getValue(1).getRaw();
+    }
+
+    private void setLink(Page node, int link) {
+        node.getRecords().get(0).getAttributes().set(1, new Value(link));
+    }
+
+    private int childAt(Page node, int slot) {
+        if (slot == 0) return link(node);
+        return (Integer) node.getRecords().get(slot).getValue(1).getRaw();
+    }
+
+    private Record leafEntry(Value key, Record_ID rid) {
+        Record entry = new Record();
+        entry.addAttribute(key);
+        entry.addAttribute(new Value(rid.getPageId()));
+        entry.addAttribute(new Value(rid.getSlotId()));
+        return entry;
+    }
+
+    private Record internalEntry(Value key, int child) {
+        Record entry = new Record();
+        entry.addAttribute(key);
+        entry.addAttribute(new Value(child));
+        return entry;
+    }
+
+    private Record_ID toRid(Record entry) {
+        return new Record_ID((Integer) entry.getValue(1).getRaw(), (Integer) entry.getValue(2).getRaw());
+    }
+}
@@ -0,0 +1,111 @@
+package index;
+
+import model.Record_ID;
+import model.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bitmap index for attributes with few distinct values, like BOOLEAN flags
+ * and short CHAR codes. For every value it keeps a RoaringBitmap of the pages
+ * holding at least one record with that value, so AND/OR combinations of
+ * equality conditions become bitmap intersections and unions that say which
+ * pages are worth reading.
+ * <br>
+ * Records move between pages and slots all the time, so the bitmaps are over
+ * pageIds rather than rows, with a count per page so a bit is only cleared
+ * when the last matching record leaves the page.
+ * <br>
+ * The index lives in memory only. After a restart it starts out unbuilt,
+ * ignores maintenance calls, and is filled from the table the first time a
+ * query wants it (see TableSchema.buildIndex).
+ */
+public class BitmapIndex implements Index {
+
+    private final Map<Object, RoaringBitmap> pages = new HashMap<>();
+    private final Map<Object, Map<Integer, Integer>> counts = new HashMap<>();
+    private boolean built;
+
+    /**
+     * @param built false for an index that still has to be filled from its table
+     */
+    public BitmapIndex(boolean built) {
+        this.built = built;
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Marks the index as filled; from here on inserts and deletes are applied
+     */
+    public void markBuilt() {
+        built = true;
+    }
+
+    @Override
+    public void insert(Value key, Record_ID rid) {
+        if (!built) return;
+        Object raw = key.getRaw();
+        counts.computeIfAbsent(raw, k -> new HashMap<>()).merge(rid.getPageId(), 1, Integer::sum);
+        pages.computeIfAbsent(raw, k -> new RoaringBitmap()).add(rid.getPageId());
+    }
+
+    @Override
+    public void delete(Value key, Record_ID rid) {
+        if (!built) return;
+        Object raw = key.getRaw();
+        Map<Integer, Integer> perPage = counts.get(raw);
+        if (perPage == null) return;
+
+        int pid = rid.getPageId();
+        Integer n = perPage.get(pid);
+        if (n == null) return;
+        if (n > 1) {
+            perPage.put(pid, n - 1);
+            return;
+        }
+        perPage.remove(pid);
+        pages.get(raw).remove(pid);
+    }
+
+    /**
+     * Entries are per page, so the slots are -1
+     */
+    @Override
+    public List<Record_ID> search(Value key) {
+        List<Record_ID> result = new ArrayList<>();
+        Map<Integer, Integer> perPage = counts.get(key.getRaw());
+        if (perPage != null) {
+            for (int pid : perPage.keySet()) {
+                result.add(new Record_ID(pid, -1));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the pages holding at least one record with the value, as a bitmap the caller may change
+     */
+    public RoaringBitmap pagesWith(Value key) {
+        RoaringBitmap found = pages.get(key.getRaw());
+        return (found == null) ? new RoaringBitmap() : found.copy();
+    }
+
+    /**
+     * Kept in memory only, so there is no page to reopen it from
+     */
+    @Override
+    public int getRootPid() {
+        return -1;
+    }
+
+    @Override
+    public List<Integer> getPageIds() {
+        return new ArrayList<>();
+    }
+}
@@ -0,0 +1,100 @@
+package index;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bloom filter over a table's primary key values. mightContain() never says
+ * no for a key that was added, and says yes for a key that wasn't about 1% of
+ * the time, so a "no" lets a caller skip looking for the key altogether.
+ * <br>
+ * The filter grows with the table: once a layer holds as many keys as it was
+ * sized for, a new layer twice its size is started, and a key is reported
+ * present if any layer has it. Keys can't be taken out, so keys that were
+ * deleted only show up as extra false positives.
+ */
+public class BloomFilter {
+
+    private static final int FIRST_CAPACITY = 1024;
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+
+    private final List<long[]> layers = new ArrayList<>();
+    private int lastCount; // keys added to the last layer
+
+    public void add(Object key) {
+        if (key == null) return;
+        if (layers.isEmpty() || lastCount >= capacity(layers.size() - 1)) {
+            layers.add(new long[capacity(layers.size()) * BITS_PER_KEY / 64]);
+            lastCount = 0;
+        }
+
+        long[] bits = layers.get(layers.size() - 1);
+        int h1 = mix(key.hashCode());
+        int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bits.length * 64);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        lastCount++;
+    }
+
+    /**
+     * @return false only if the key was never added
+     */
+    public boolean mightContain(Object key) {
+        if (key == null) return true;
+        int h1 = mix(key.hashCode());
+        int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+        for (long[] bits : layers) {
+            boolean all = true;
+            for (int i = 0; i < HASHES && all; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits.length * 64);
+                all = (bits[bit >>> 6] & (1L << bit)) != 0;
+            }
+            if (all) return true;
+        }
+        return false;
+    }
+
+    private static int capacity(int layer) {
+        return FIRST_CAPACITY << layer;
+    }
+
+    // finaliser of murmur3, Integer keys hash to themselves
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(layers.size());
+        out.writeInt(lastCount);
+        for (long[] bits : layers) {
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    public static BloomFilter readFrom(DataInputStream in) throws IOException {
+        BloomFilter filter = new BloomFilter();
+        int layerCount = in.readInt();
+        filter.lastCount = in.readInt();
+        for (int l = 0; l < layerCount; l++) {
+            long[] bits = new long[capacity(l) * BITS_PER_KEY / 64];
+            for (int w = 0; w < bits.length; w++) {
+                bits[w] = in.readLong();
+            }
+            filter.layers.add(bits);
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,420 @@
+package index;
+
+import buffer.BufferManager;
+import model.Page;
+import model.Record;
+import model.Record_ID;
+import model.Value;
+import storage.StorageManager;
+import util.DBException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Disk-resident linear hash index mapping keys to Record_IDs.
+ * Like BPlusTree, every page is an ordinary Page held by the BufferManager.
+ * <br>
+ * Page layout, one Record per slot:
+ * - the header page starts with [level, next, keys, keyBytes, nextDirPid]
+ *   and the rest of its slots are [bucketPid], the bucket directory in order.
+ *   Indexes written before the key counts were kept have a 4 field header,
+ *   [level, next, overflowPages, nextDirPid]; their counts are redone on load.
+ *   When the directory outgrows it, it continues on pages that start with
+ *   [nextDirPid] (-1 ends the chain).
+ * - a bucket page starts with [overflowPid] (-1 for none), followed by
+ *   entries [key, pageId, slotId] in no particular order.
+ * <br>
+ * Buckets split one at a time in round robin order (bucket "next"), whenever
+ * one entry per distinct key would fill more than 3/4 of the buckets' primary
+ * pages, so the directory grows a page at a time instead of doubling. Repeats
+ * of a key aren't counted: they always share a chain, and no split can make a
+ * chain of one hot key shorter. Deletes don't shrink the table.
+ */
+public class HashIndex implements Index {
+
+    private static final int INITIAL_BUCKETS = 2;
+    // split once the keys take up more than MAX_LOAD_NUM / MAX_LOAD_DEN of the bucket pages
+    private static final int MAX_LOAD_NUM = 3;
+    private static final int MAX_LOAD_DEN = 4;
+
+    private final StorageManager storage;
+    private final BufferManager buffer;
+    private final int headerPid;
+
+    // copy of the header and directory, read from disk on first use
+    private boolean loaded;
+    private int level;
+    private int next;
+    // distinct keys, and the size of one entry for each, slot offsets included
+    private int keys;
+    private long keyBytes;
+    // false for an old header without room for the counts
+    private boolean countsOnDisk = true;
+    private final List<Integer> buckets = new ArrayList<>();
+    private final List<Integer> dirPids = new ArrayList<>();
+
+    /**
+     * Creates a new, empty index
+     * @param storage used to allocate pages
+     * @param buffer used to read and write pages
+     * @throws DBException if the pages can't be allocated
+     */
+    public HashIndex(StorageManager storage, BufferManager buffer) throws DBException {
+        this.storage = storage;
+        this.buffer = buffer;
+        this.headerPid = storage.allocatePage();
+
+        Page header = buffer.newPage(headerPid);
+        header.addRecord(ints(0, 0, 0, 0, -1));
+        dirPids.add(headerPid);
+        loaded = true;
+
+        for (int i = 0; i < INITIAL_BUCKETS; i++) {
+            addBucket(newBucketPage());
+        }
+        writeHeader();
+    }
+
+    /**
+     * Opens an index that already exists on disk
+     * @param headerPid pageId of the header page
+     * @param storage used to allocate pages
+     * @param buffer used to read and write pages
+     */
+    public HashIndex(int headerPid, StorageManager storage, BufferManager buffer) {
+        this.storage = storage;
+        this.buffer = buffer;
+        this.headerPid = headerPid;
+    }
+
+    @Override
+    public int getRootPid() {
+        return headerPid;
+    }
+
+    @Override
+    public void insert(Value key, Record_ID rid) throws DBException {
+        load();
+        Record entry = new Record();
+        entry.addAttribute(key);
+        entry.addAttribute(new Value(rid.getPageId()));
+        entry.addAttribute(new Value(rid.getSlotId()));
+
+        boolean repeat = appendToChain(buckets.get(bucketFor(hash(key))), entry);
+        if (repeat) return;
+
+        keys++;
+        keyBytes += slotBytes(entry);
+        if (keyBytes * MAX_LOAD_DEN > (long) buckets.size() * bucketCapacity() * MAX_LOAD_NUM) {
+            split();
+        }
+        writeHeader();
+    }
+
+    @Override
+    public void delete(Value key, Record_ID rid) throws DBException {
+        load();
+        int pid = buckets.get(bucketFor(hash(key)));
+        Record removed = null;
+        boolean kept = false; // another entry still holds the key
+        while (pid != -1) {
+            Page page = buffer.getPage(pid);
+            List<Record> records = page.getRecords();
+            for (int i = 1; i < records.size(); i++) {
+                Record e = records.get(i);
+                if (Value.compareRaw(e.getValue(0).getRaw(), key.getRaw()) != 0) continue;
+                if (removed == null && (rid == null || (Integer) e.getValue(1).getRaw() == rid.getPageId())) {
+                    page.removeRecordAt(i--);
+                    buffer.markDirty(pid);
+                    removed = e;
+                } else {
+                    kept = true;
+                }
+                if (removed != null && kept) return;
+            }
+            pid = link(page);
+        }
+        if (removed != null) {
+            keys--;
+            keyBytes -= slotBytes(removed);
+            writeHeader();
+        }
+    }
+
+    @Override
+    public List<Record_ID> search(Value key) throws DBException {
+        load();
+        List<Record_ID> result = new ArrayList<>();
+        int pid = buckets.get(bucketFor(hash(key)));
+        while (pid != -1) {
+            Page page = buffer.getPage(pid);
+            List<Record> records = page.getRecords();
+            for (int i = 1; i < records.size(); i++) {
+                Record e = records.get(i);
+                if (Value.compareRaw(e.getValue(0).getRaw(), key.getRaw()) == 0) {
+                    result.add(new Record_ID((Integer) e.getValue(1).getRaw(), (Integer) e.getValue(2).getRaw()));
+                }
+            }
+            pid = link(page);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Integer> getPageIds() throws DBException {
+        load();
+        List<Integer> pids = new ArrayList<>(dirPids);
+        for (int pid : buckets) {
+            while (pid != -1) {
+                pids.add(pid);
+                pid = link(buffer.getPage(pid));
+            }
+        }
+        return pids;
+    }
+
+    // -------- hashing --------
+
+    private static int hash(Value key) {
+        Object raw = key.getRaw();
+        int h = (raw == null) ? 0 : raw.hashCode();
+        // spread the bits, Integer keys hash to themselves
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & 0x7fffffff;
+    }
+
+    /**
+     * Buckets before "next" have already been split this round, so they are
+     * addressed with one more bit.
+     */
+    private int bucketFor(int h) {
+        int n = INITIAL_BUCKETS << level;
+        int b = h % n;
+        if (b < next) {
+            b = h % (n << 1);
+        }
+        return b;
+    }
+
+    /**
+     * Splits bucket "next" into itself and a new bucket at the end of the directory.
+     */
+    private void split() throws DBException {
+        int oldPid = buckets.get(next);
+
+        // take every entry out of the chain, keeping only the primary page
+        List<Record> moved = new ArrayList<>();
+        List<Integer> overflow = new ArrayList<>();
+        int pid = oldPid;
+        while (pid != -1) {
+            Page page = buffer.getPage(pid);
+            List<Record> records = page.getRecords();
+            moved.addAll(records.subList(1, records.size()));
+            if (pid != oldPid) overflow.add(pid);
+            pid = link(page);
+        }
+        Page primary = buffer.getPage(oldPid);
+        primary.getRecords().clear();
+        primary.addRecord(ints(-1));
+        buffer.markDirty(oldPid);
+        for (int freed : overflow) {
+            buffer.discardPage(freed);
+            storage.freePage(freed);
+        }
+
+        addBucket(newBucketPage());
+        next++;
+        if (next == INITIAL_BUCKETS << level) {
+            level++;
+            next = 0;
+        }
+
+        // with next moved on, each entry now addresses either the old bucket or the new one
+        for (Record e : moved) {
+            appendToChain(buckets.get(bucketFor(hash(e.getValue(0)))), e);
+        }
+    }
+
+    // -------- page helpers --------
+
+    /**
+     * Adds an entry to the first page of a bucket chain that has room,
+     * growing the chain by one page if none does.
+     * @return whether the chain already held the entry's key
+     */
+    private boolean appendToChain(int pid, Record entry) throws DBException {
+        Object key = entry.getValue(0).getRaw();
+        boolean seen = false;
+        boolean placed = false;
+        while (true) {
+            Page page = buffer.getPage(pid);
+            seen = seen || holdsKey(page, key);
+            if (!placed && buffer.canFitRecord(page, entry)) {
+                page.addRecord(entry);
+                buffer.markDirty(pid);
+                placed = true;
+            }
+            // once it's in, the rest of the chain is only read to look for the key
+            if (placed && seen) return true;
+            int link = link(page);
+            if (link == -1 && placed) return false;
+            if (link == -1) {
+                int newPid = storage.allocatePage();
+                Page added = buffer.newPage(newPid);
+                added.addRecord(ints(-1));
+                added.addRecord(entry);
+                buffer.markDirty(newPid);
+
+                // re-fetch, making the new page may have pushed this one out
+                page = buffer.getPage(pid);
+                page.getRecords().set(0, ints(newPid));
+                buffer.markDirty(pid);
+                return seen;
+            }
+            pid = link;
+        }
+    }
+
+    private static boolean holdsKey(Page bucketPage, Object key) {
+        List<Record> records = bucketPage.getRecords();
+        for (int i = 1; i < records.size(); i++) {
+            if (Value.compareRaw(records.get(i).getValue(0).getRaw(), key) == 0) return true;
+        }
+        return false;
+    }
+
+    private int newBucketPage() throws DBException {
+        int pid = storage.allocatePage();
+        Page page = buffer.newPage(pid);
+        page.addRecord(ints(-1));
+        buffer.markDirty(pid);
+        return pid;
+    }
+
+    /**
+     * Appends a bucket to the directory, on the last directory page if it fits.
+     */
+    private void addBucket(int bucketPid) throws DBException {
+        buckets.add(bucketPid);
+        Record entry = ints(bucketPid);
+
+        int lastPid = dirPids.get(dirPids.size() - 1);
+        Page last = buffer.getPage(lastPid);
+        if (buffer.canFitRecord(last, entry)) {
+            last.addRecord(entry);
+            buffer.markDirty(lastPid);
+            return;
+        }
+
+        int newPid = storage.allocatePage();
+        Page dir = buffer.newPage(newPid);
+        dir.addRecord(ints(-1));
+        dir.addRecord(entry);
+        buffer.markDirty(newPid);
+        dirPids.add(newPid);
+
+        // link it from the previous directory page; the header keeps the link in its last field
+        last = buffer.getPage(lastPid);
+        if (lastPid == headerPid) {
+            last.getRecords().set(0, headerRecord(newPid));
+        } else {
+            last.getRecords().set(0, ints(newPid));
+        }
+        buffer.markDirty(lastPid);
+    }
+
+    private void writeHeader() throws DBException {
+        Page header = buffer.getPage(headerPid);
+        Record head = header.getRecords().get(0);
+        int nextDir = (Integer) head.getValue(head.size() - 1).getRaw();
+        header.getRecords().set(0, headerRecord(nextDir));
+        buffer.markDirty(headerPid);
+    }
+
+    private Record headerRecord(int nextDir) {
+        if (!countsOnDisk) {
+            return ints(level, next, 0, nextDir);
+        }
+        return ints(level, next, keys, (int) keyBytes, nextDir);
+    }
+
+    /**
+     * Reads the header and the bucket directory the first time the index is used.
+     */
+    private void load() throws DBException {
+        if (loaded) return;
+
+        Page header = buffer.getPage(headerPid);
+        Record head = header.getRecords().get(0);
+        level = (Integer) head.getValue(0).getRaw();
+        next = (Integer) head.getValue(1).getRaw();
+        countsOnDisk = head.size() == 5;
+        if (countsOnDisk) {
+            keys = (Integer) head.getValue(2).getRaw();
+            keyBytes = (Integer) head.getValue(3).getRaw();
+        }
+
+        int pid = headerPid;
+        while (pid != -1) {
+            Page dir = buffer.getPage(pid);
+            List<Record> records = dir.getRecords();
+            dirPids.add(pid);
+            for (int i = 1; i < records.size(); i++) {
+                buckets.add((Integer) records.get(i).getValue(0).getRaw());
+            }
+            Record first = records.get(0);
+            pid = (Integer) first.getValue(first.size() - 1).getRaw();
+        }
+        loaded = true;
+
+        if (!countsOnDisk) {
+            // the old header has no counts, and growing it could overflow a full header page
+            for (int bucketPid : buckets) {
+                // equal keys always share a bucket, so each bucket can be counted on its own
+                Set<Object> seen = new HashSet<>();
+                for (pid = bucketPid; pid != -1; ) {
+                    Page page = buffer.getPage(pid);
+                    List<Record> records = page.getRecords();
+                    for (int i = 1; i < records.size(); i++) {
+                        if (seen.add(records.get(i).getValue(0).getRaw())) {
+                            keys++;
+                            keyBytes += slotBytes(records.get(i));
+                        }
+                    }
+                    pid = link(page);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return bytes an entry takes up on a bucket page, its slot offset included
+     */
+    private int slotBytes(Record entry) {
+        return buffer.recordSizeBytes(entry) + 4;
+    }
+
+    /**
+     * @return bytes a bucket page has for entries once its link is stored
+     */
+    private int bucketCapacity() {
+        return buffer.getPageSize() - BufferManager.pageBytesNeeded(1, buffer.recordSizeBytes(ints(-1)));
+    }
+
+    private int link(Page bucketPage) {
+        return (Integer) bucketPage.getRecords().get(0).getValue(0).getRaw();
+    }
+
+    private static Record ints(int... values) {
+        Record r = new Record();
+        for (int v : values) {
+            r.addAttribute(new Value(v));
+        }
+        return r;
+    }
+}
@@ -0,0 +1,56 @@
+package index;
+
+/**
+ * Estimates how many distinct values it has been given, in a fixed 4KB no
+ * matter how many there are. Each value is hashed; the first bits of the hash
+ * pick one of 4096 registers, which keeps the longest run of leading zeros
+ * seen in the rest. Long runs are rare, so the runs say how many different
+ * hashes went by. The estimate is typically within about 2% of the real count.
+ */
+public class HyperLogLog {
+
+    private static final int BITS = 12;
+    private static final int REGISTERS = 1 << BITS;
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    public void add(Object value) {
+        if (value == null) return;
+        long h = mix(value.hashCode());
+        int register = (int) (h >>> (64 - BITS));
+        // position of the first 1 in the remaining bits; the sentinel bit caps the run
+        byte rank = (byte) (Long.numberOfLeadingZeros((h << BITS) | (1L << (BITS - 1))) + 1);
+        if (rank > registers[register]) {
+            registers[register] = rank;
+        }
+    }
+
+    /**
+     * @return estimated number of distinct values added
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        // with few values most registers are still empty, counting those is more accurate
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    // finaliser of murmur3's 64 bit hash, spreads Integer hash codes over all 64 bits
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -13,4 +13,14 @@ public interface Index {
     void delete(Value key, Record_ID rid) throws DBException;
 
     List<Record_ID> search(Value key) throws DBException;
+
+    /**
+     * @return the pageId the index is opened from again after a restart
+     */
+    int getRootPid();
+
+    /**
+     * @return the pageIds of every page the index uses, so they can be freed
+     */
+    List<Integer> getPageIds() throws DBException;
 }
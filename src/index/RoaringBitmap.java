@@ -0,0 +1,215 @@
+package index;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compressed set of non-negative ints in the style of a roaring bitmap.
+ * Values are grouped by their high 16 bits. Each group keeps its low 16 bits
+ * either as a sorted array, while it has at most 4096 of them, or as a
+ * 65536-bit bitset once it is denser than that. Sparse sets stay small and
+ * dense ones cost at most 8KB per group, and intersections and unions work a
+ * group at a time.
+ */
+public class RoaringBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+
+    private final TreeMap<Integer, Container> containers = new TreeMap<>();
+
+    public void add(int value) {
+        containers.computeIfAbsent(value >>> 16, k -> new Container()).add((char) value);
+    }
+
+    public void remove(int value) {
+        Container c = containers.get(value >>> 16);
+        if (c == null) return;
+        c.remove((char) value);
+        if (c.cardinality() == 0) {
+            containers.remove(value >>> 16);
+        }
+    }
+
+    public boolean contains(int value) {
+        Container c = containers.get(value >>> 16);
+        return c != null && c.contains((char) value);
+    }
+
+    public boolean isEmpty() {
+        return containers.isEmpty();
+    }
+
+    public int cardinality() {
+        int n = 0;
+        for (Container c : containers.values()) {
+            n += c.cardinality();
+        }
+        return n;
+    }
+
+    /**
+     * @return a new bitmap holding the values in both this one and the other
+     */
+    public RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (Map.Entry<Integer, Container> e : containers.entrySet()) {
+            Container o = other.containers.get(e.getKey());
+            if (o == null) continue;
+            Container c = e.getValue().and(o);
+            if (c.cardinality() > 0) {
+                result.containers.put(e.getKey(), c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a new bitmap holding the values in either this one or the other
+     */
+    public RoaringBitmap or(RoaringBitmap other) {
+        RoaringBitmap result = copy();
+        for (Map.Entry<Integer, Container> e : other.containers.entrySet()) {
+            Container mine = result.containers.get(e.getKey());
+            result.containers.put(e.getKey(), (mine == null) ? e.getValue().copy() : mine.or(e.getValue()));
+        }
+        return result;
+    }
+
+    public RoaringBitmap copy() {
+        RoaringBitmap result = new RoaringBitmap();
+        for (Map.Entry<Integer, Container> e : containers.entrySet()) {
+            result.containers.put(e.getKey(), e.getValue().copy());
+        }
+        return result;
+    }
+
+    /**
+     * The low 16 bits of one group of values: a sorted array while there are
+     * at most ARRAY_MAX of them, a bitset otherwise.
+     */
+    private static class Container {
+        private char[] array = new char[4];
+        private int size;
+        private long[] bits; // non-null when in bitset form
+
+        boolean contains(char v) {
+            if (bits != null) {
+                return (bits[v >>> 6] & (1L << v)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, size, v) >= 0;
+        }
+
+        void add(char v) {
+            if (bits != null) {
+                if ((bits[v >>> 6] & (1L << v)) == 0) {
+                    bits[v >>> 6] |= 1L << v;
+                    size++;
+                }
+                return;
+            }
+            int i = Arrays.binarySearch(array, 0, size, v);
+            if (i >= 0) return;
+            i = -i - 1;
+            if (size == ARRAY_MAX) {
+                toBitset();
+                add(v);
+                return;
+            }
+            if (size == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, size * 2));
+            }
+            System.arraycopy(array, i, array, i + 1, size - i);
+            array[i] = v;
+            size++;
+        }
+
+        void remove(char v) {
+            if (bits != null) {
+                if ((bits[v >>> 6] & (1L << v)) != 0) {
+                    bits[v >>> 6] &= ~(1L << v);
+                    size--;
+                    if (size <= ARRAY_MAX) toArray();
+                }
+                return;
+            }
+            int i = Arrays.binarySearch(array, 0, size, v);
+            if (i < 0) return;
+            System.arraycopy(array, i + 1, array, i, size - i - 1);
+            size--;
+        }
+
+        int cardinality() {
+            return size;
+        }
+
+        Container and(Container o) {
+            Container result = new Container();
+            if (bits != null && o.bits != null) {
+                result.bits = new long[1024];
+                for (int w = 0; w < 1024; w++) {
+                    result.bits[w] = bits[w] & o.bits[w];
+                    result.size += Long.bitCount(result.bits[w]);
+                }
+                if (result.size <= ARRAY_MAX) result.toArray();
+                return result;
+            }
+            // walk the array side, probing the other
+            Container small = (bits == null) ? this : o;
+            Container other = (small == this) ? o : this;
+            for (int i = 0; i < small.size; i++) {
+                if (other.contains(small.array[i])) result.add(small.array[i]);
+            }
+            return result;
+        }
+
+        Container or(Container o) {
+            Container result = copy();
+            if (o.bits != null) {
+                result.toBitset();
+                for (int w = 0; w < 1024; w++) {
+                    result.bits[w] |= o.bits[w];
+                }
+                result.size = 0;
+                for (long word : result.bits) {
+                    result.size += Long.bitCount(word);
+                }
+                return result;
+            }
+            for (int i = 0; i < o.size; i++) {
+                result.add(o.array[i]);
+            }
+            return result;
+        }
+
+        Container copy() {
+            Container c = new Container();
+            c.size = size;
+            c.array = (array == null) ? null : array.clone();
+            c.bits = (bits == null) ? null : bits.clone();
+            return c;
+        }
+
+        private void toBitset() {
+            if (bits != null) return;
+            bits = new long[1024];
+            for (int i = 0; i < size; i++) {
+                bits[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private void toArray() {
+            array = new char[Math.max(4, size)];
+            int n = 0;
+            for (int w = 0; w < 1024; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    array[n++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            bits = null;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package index;
+
+import buffer.BufferManager;
+import storage.StorageManager;
+import util.DBException;
+
+/**
+ * A user-created index on one attribute of a table, as named by CREATE INDEX.
+ * Holds what the catalog persists about it: the name, the attribute, the kind
+ * of index and the page the index is opened from.
+ */
+public class SecondaryIndex {
+
+    public static final String HASH = "HASH";
+    public static final String BTREE = "BTREE";
+    public static final String BITMAP = "BITMAP";
+
+    private final String name;
+    private final String attribute;
+    private final String type;
+    private final int rootPid;
+    private Index index;
+
+    /**
+     * Describes an index read from the catalog; it is opened by open()
+     */
+    public SecondaryIndex(String name, String attribute, String type, int rootPid) {
+        this.name = name;
+        this.attribute = attribute;
+        this.type = type;
+        this.rootPid = rootPid;
+    }
+
+    /**
+     * Creates a new, empty index
+     * @throws DBException if the type isn't supported or its pages can't be allocated
+     */
+    public static SecondaryIndex create(String name, String attribute, String type,
+                                        StorageManager storage, BufferManager buffer) throws DBException {
+        SecondaryIndex created = new SecondaryIndex(name, attribute, type, -1);
+        if (type.equals(HASH)) {
+            created.index = new HashIndex(storage, buffer);
+        } else if (type.equals(BTREE)) {
+            created.index = new BPlusTree(storage, buffer);
+        } else if (type.equals(BITMAP)) {
+            created.index = new BitmapIndex(true);
+        } else {
+            throw new DBException("Unsupported index type: " + type);
+        }
+        return created;
+    }
+
+    public void open(StorageManager storage, BufferManager buffer) {
+        if (type.equals(HASH)) {
+            index = new HashIndex(rootPid, storage, buffer);
+        } else if (type.equals(BTREE)) {
+            index = new BPlusTree(rootPid, storage, buffer);
+        } else if (type.equals(BITMAP)) {
+            // not persisted, TableSchema.buildIndex fills it when first needed
+            index = new BitmapIndex(false);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Index getIndex() {
+        return index;
+    }
+
+    public int getRootPid() {
+        return (index == null) ? rootPid : index.getRootPid();
+    }
+}
\ No newline at end of file
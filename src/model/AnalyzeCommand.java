@@ -0,0 +1,22 @@
+package model;
+
+import parser.CommandType;
+
+public class AnalyzeCommand extends ParsedCommand {
+
+    private final String tableName;
+
+    public AnalyzeCommand(String tableName) {
+        this.tableName = tableName;
+    }
+
+    @Override
+    public CommandType getType() {
+        return CommandType.ANALYZE;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+}
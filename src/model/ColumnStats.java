@@ -0,0 +1,76 @@
+package model;
+
+/**
+ * What ANALYZE found out about one attribute of a table: an estimate of its
+ * distinct values, the fraction of records where it is null, its smallest and
+ * largest values and an equi-depth histogram. The histogram's bounds split
+ * the non-null values into buckets holding about as many values each, so
+ * where a constant falls among them says what fraction of values are below it.
+ */
+public class ColumnStats {
+
+    private final long distinct;
+    private final double nullFraction;
+    private final Object min;
+    private final Object max;
+    private final Object[] bounds;
+
+    /**
+     * @param bounds histogram bucket bounds in ascending order, first and last
+     *               the smallest and largest values sampled; empty with no values
+     */
+    public ColumnStats(long distinct, double nullFraction, Object min, Object max, Object[] bounds) {
+        this.distinct = distinct;
+        this.nullFraction = nullFraction;
+        this.min = min;
+        this.max = max;
+        this.bounds = bounds;
+    }
+
+    public long getDistinct() {
+        return distinct;
+    }
+
+    public double getNullFraction() {
+        return nullFraction;
+    }
+
+    public Object getMin() {
+        return min;
+    }
+
+    public Object getMax() {
+        return max;
+    }
+
+    public Object[] getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return estimated fraction of the table's records equal to a value
+     */
+    public double equalFraction() {
+        return (distinct == 0) ? 0 : (1 - nullFraction) / distinct;
+    }
+
+    /**
+     * @return estimated fraction of the table's records below a value
+     */
+    public double lessFraction(Object value) {
+        if (bounds.length < 2) return 0;
+        if (Value.compareRaw(value, bounds[0]) <= 0) return 0;
+        int buckets = bounds.length - 1;
+        if (Value.compareRaw(value, bounds[buckets]) > 0) return 1 - nullFraction;
+
+        int i = 0;
+        while (Value.compareRaw(value, bounds[i + 1]) > 0) i++;
+        // numbers are assumed spread evenly over the bucket, anything else sits in its middle
+        double within = 0.5;
+        if (value instanceof Number v && bounds[i] instanceof Number lo && bounds[i + 1] instanceof Number hi
+                && hi.doubleValue() > lo.doubleValue()) {
+            within = (v.doubleValue() - lo.doubleValue()) / (hi.doubleValue() - lo.doubleValue());
+        }
+        return (1 - nullFraction) * (i + within) / buckets;
+    }
+}
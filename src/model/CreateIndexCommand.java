@@ -0,0 +1,43 @@
+package model;
+
+import parser.CommandType;
+
+public class CreateIndexCommand extends ParsedCommand {
+
+    private final String indexName;
+    private final String tableName;
+    private final String attributeName;
+    private final String indexType;
+
+    public CreateIndexCommand(String indexName, String tableName, String attributeName, String indexType) {
+        this.indexName = indexName;
+        this.tableName = tableName;
+        this.attributeName = attributeName;
+        this.indexType = indexType;
+    }
+
+    @Override
+    public CommandType getType() {
+        return CommandType.CREATE_INDEX;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    /**
+     * @return the kind of index named after USING, upper case; BTREE if there was no USING
+     */
+    public String getIndexType() {
+        return indexType;
+    }
+
+}
\ No newline at end of file
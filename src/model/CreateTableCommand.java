@@ -6,10 +6,18 @@ public class CreateTableCommand extends ParsedCommand {
 
     private final Attribute[] attributes;
     private final String tableName;
+    private final int fillFactor;
+    private final int mergeThreshold;
 
     public CreateTableCommand(String tableName, Attribute[] attributes) {
+        this(tableName, attributes, TableSchema.DEFAULT_FILL_FACTOR, TableSchema.DEFAULT_MERGE_THRESHOLD);
+    }
+
+    public CreateTableCommand(String tableName, Attribute[] attributes, int fillFactor, int mergeThreshold) {
         this.tableName = tableName;
         this.attributes = attributes;
+        this.fillFactor = fillFactor;
+        this.mergeThreshold = mergeThreshold;
     }
 
     @Override
@@ -25,4 +33,18 @@ public class CreateTableCommand extends ParsedCommand {
         return attributes;
     }
 
+    /**
+     * @return how full, as a percent, pages are left when the table grows at its end
+     */
+    public int getFillFactor() {
+        return fillFactor;
+    }
+
+    /**
+     * @return how full, as a percent, a page has to stay after a delete to not be merged
+     */
+    public int getMergeThreshold() {
+        return mergeThreshold;
+    }
+
 }
\ No newline at end of file
@@ -38,6 +38,13 @@ public class DeleteCommand extends ParsedCommand {
         }
     }
 
+    /**
+     * @return the root of the WHERE tree, or null if there is no WHERE clause
+     */
+    public IWhereTree getWhereTree() {
+        return whereTree;
+    }
+
     /**
      * @return true if the command has a WHERE clause; false otherwise
      */
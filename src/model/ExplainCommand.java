@@ -0,0 +1,32 @@
+package model;
+
+import parser.CommandType;
+
+public class ExplainCommand extends ParsedCommand {
+
+    private final SelectCommand select;
+    private final boolean analyze;
+
+    /**
+     * @param select the query to explain
+     * @param analyze true to run the query and report what each step did
+     */
+    public ExplainCommand(SelectCommand select, boolean analyze) {
+        this.select = select;
+        this.analyze = analyze;
+    }
+
+    @Override
+    public CommandType getType() {
+        return CommandType.EXPLAIN;
+    }
+
+    public SelectCommand getSelect() {
+        return select;
+    }
+
+    public boolean isAnalyze() {
+        return analyze;
+    }
+
+}
@@ -1,10 +1,21 @@
 package model;
+import buffer.BufferManager;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Record {
     private final List<Value> attributes;
 
+    // Bytes this record was read from. While non-null, columns are decoded one
+    // at a time on first access, so a scan only pays for the attributes the
+    // statement actually looks at. Cleared once the record is fully decoded.
+    private byte[] encoded;
+    private int offset;
+    private int[] fieldOffsets;
+    private Value[] decoded;
+
     public Record(){
         this.attributes = new ArrayList<>();
     }
@@ -13,16 +24,99 @@ public class Record {
         this.attributes = new ArrayList<>();
     }
 
+    /**
+     * Creates a record backed by its serialized form inside a page.
+     * Nothing is decoded until a column is requested.
+     * @param data the page bytes holding the record
+     * @param offset where the record starts within data
+     */
+    public Record(byte[] data, int offset){
+        this.attributes = new ArrayList<>();
+        this.encoded = data;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns every column as a mutable list. This decodes all remaining
+     * columns, so hot paths that only need a few columns should use getValue.
+     */
     public List<Value> getAttributes() {
+        materialize();
         return attributes;
     }
 
     public void addAttribute(Value o){
+        materialize();
         attributes.add(o);
     }
 
     public Value getValue(int index){
-        return attributes.get(index);
+        if (encoded == null) {
+            return attributes.get(index);
+        }
+        int[] offsets = offsets();
+        if (index < 0 || index >= offsets.length - 1) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + (offsets.length - 1));
+        }
+        if (decoded[index] == null) {
+            decoded[index] = BufferManager.decodeField(encoded, offsets[index]);
+        }
+        return decoded[index];
+    }
+
+    /**
+     * @return the number of columns, without decoding any of them
+     */
+    public int size(){
+        if (encoded == null) {
+            return attributes.size();
+        }
+        return offsets().length - 1;
+    }
+
+    /**
+     * @return true if the record still has its serialized form, meaning it has
+     * not been changed since it was read from a page
+     */
+    public boolean isEncoded(){
+        return encoded != null;
+    }
+
+    /**
+     * @return a copy of the serialized bytes this record was read from
+     */
+    public byte[] getEncoded(){
+        int[] offsets = offsets();
+        return Arrays.copyOfRange(encoded, offset, offsets[offsets.length - 1]);
+    }
+
+    /**
+     * @return the serialized size in bytes; only valid while isEncoded()
+     */
+    public int encodedLength(){
+        int[] offsets = offsets();
+        return offsets[offsets.length - 1] - offset;
+    }
+
+    private int[] offsets(){
+        if (fieldOffsets == null) {
+            fieldOffsets = BufferManager.fieldOffsets(encoded, offset);
+            decoded = new Value[fieldOffsets.length - 1];
+        }
+        return fieldOffsets;
+    }
+
+    private void materialize(){
+        if (encoded == null) {
+            return;
+        }
+        int n = size();
+        for (int i = 0; i < n; i++) {
+            attributes.add(getValue(i));
+        }
+        encoded = null;
+        fieldOffsets = null;
+        decoded = null;
     }
 
 }
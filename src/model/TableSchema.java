@@ -1,25 +1,89 @@
 package model;
 
 import buffer.BufferManager;
+import index.BPlusTree;
+import index.BitmapIndex;
+import index.BloomFilter;
+import index.SecondaryIndex;
 import storage.StorageManager;
 import util.DBException;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class TableSchema implements Table {
 
+    public static final int DEFAULT_FILL_FACTOR = 90;
+
+    public static final int DEFAULT_MERGE_THRESHOLD = 40;
+
     private final String name;
     private final Schema schema;
     private boolean temporary;
 
+    // How full, as a percent, a page is left when the table grows past its end:
+    // the last page splits at this point instead of in half, and bulkInsert()
+    // packs new pages to it. The gap is room for later inserts into the middle.
+    private int fillFactor = DEFAULT_FILL_FACTOR;
+
+    // A page filled below this percent after a delete is merged into its right
+    // neighbour when the two fit on one page. Persisted like the fill factor.
+    private int mergeThreshold = DEFAULT_MERGE_THRESHOLD;
+
     // Persist this list via FileCatalog
     private final List<Integer> pageIds = new ArrayList<>();
 
+    // Where each page sits in pageIds, by pageId. Built on first use and dropped
+    // whenever pages are added or removed; deletes never do either, so a run of
+    // them finds every page without scanning pageIds.
+    private Map<Integer, Integer> pageIndexes;
+
+    // Fence keys: smallest and largest primary key on each page, parallel to pageIds
+    // and persisted with them. Pages are kept in key order, so these let inserts and
+    // key lookups binary search for the one page that can hold a key without reading
+    // any other page. A page with no records has null fences.
+    private final List<Value> minKeys = new ArrayList<>();
+    private final List<Value> maxKeys = new ArrayList<>();
+
+    // Zone map of every page, by pageId, persisted with the page list. Lets a scan
+    // skip pages whose values can't match its WHERE clause on any attribute, not
+    // just the key. Temporary tables don't keep them.
+    private final Map<Integer, ZoneMap> zones = new HashMap<>();
+
+    // Bloom filter over the primary keys in the table, persisted with the catalog.
+    // A key it has never seen needs no duplicate check and no lookup. Null until
+    // built: tables read from a catalog without one fill it on first use.
+    private BloomFilter keyFilter;
+
+    // Statistics from the last ANALYZE, persisted with the catalog. Null if the
+    // table was never analyzed.
+    private TableStats stats;
+
+    // Set for tables read from a catalog written before fences and zone maps were
+    // persisted. rebuildPageSummaries() recomputes them from the pages.
+    private boolean summariesMissing;
+
     // Bound at runtime so we can read/write pages
     private StorageManager storage;
     private BufferManager buffer;
 
+    // Primary key index, only kept when the database runs with indexing on.
+    // An entry's pageId is always the page holding the key. The slot is where the
+    // record sat when the entry was written and drifts as records shift within
+    // the page, so the record is always re-located on the page by its key.
+    private BPlusTree primaryIndex;
+    private int indexRoot = -1; // root pageId read from the catalog, opened in bind()
+
+    // Indexes made with CREATE INDEX. Unlike the primary index these are kept
+    // whether or not indexing is on, and their entries follow records between
+    // pages the same way.
+    private final List<SecondaryIndex> secondaryIndexes = new ArrayList<>();
+
     // Used when CREATING a table at runtime
     public TableSchema(String name, Schema schema, StorageManager storage, BufferManager buffer) {
         this.name = name;
@@ -27,6 +91,7 @@ public class TableSchema implements Table {
         this.storage = storage;
         this.buffer = buffer;
         temporary = false;
+        keyFilter = new BloomFilter();
     }
 
     public TableSchema(String name, Schema schema, StorageManager storage, BufferManager buffer, boolean temporary) {
@@ -35,25 +100,315 @@ public class TableSchema implements Table {
         this.temporary = temporary;
         this.storage = storage;
         this.buffer = buffer;
+        if (!temporary) {
+            keyFilter = new BloomFilter();
+        }
     }
 
     // Used when LOADING from catalog file (bind storage/buffer later)
     public TableSchema(String name, Schema schema, List<Integer> pageIds) {
         this.name = name;
         this.schema = schema;
-        if (pageIds != null) this.pageIds.addAll(pageIds);
+        if (pageIds != null) {
+            this.pageIds.addAll(pageIds);
+            for (int i = 0; i < pageIds.size(); i++) {
+                minKeys.add(null);
+                maxKeys.add(null);
+            }
+            summariesMissing = !pageIds.isEmpty();
+        }
+    }
+
+    public TableSchema(String name, Schema schema, List<Integer> pageIds, List<Value> minKeys, List<Value> maxKeys) {
+        this.name = name;
+        this.schema = schema;
+        this.pageIds.addAll(pageIds);
+        this.minKeys.addAll(minKeys);
+        this.maxKeys.addAll(maxKeys);
     }
 
     // Called after catalog.load() in startup()
     public void bind(StorageManager storage, BufferManager buffer) {
         this.storage = storage;
         this.buffer = buffer;
+        if (indexRoot != -1) {
+            primaryIndex = new BPlusTree(indexRoot, storage, buffer);
+        }
+        for (SecondaryIndex si : secondaryIndexes) {
+            si.open(storage, buffer);
+        }
+    }
+
+    /**
+     * Reads every page to recompute what a catalog from before fence keys were
+     * persisted didn't keep: the fence keys, the zone maps and the primary key
+     * filter. Does nothing for a table whose catalog had them.
+     * Called after bind() in startup()
+     */
+    public void rebuildPageSummaries() throws DBException {
+        if (!summariesMissing) return;
+        if (storage == null || buffer == null) {
+            throw new DBException("Table not bound to storage/buffer");
+        }
+        BloomFilter filter = (temporary || schema.getPrimaryKey() == null) ? null : new BloomFilter();
+        for (int i = 0; i < pageIds.size(); i++) {
+            Page page = buffer.getPage(pageIds.get(i));
+            refreshFence(i, page);
+            refreshZone(page);
+            if (filter != null) {
+                int pkIndex = pkIndex();
+                for (Record r : page.getRecords()) {
+                    filter.add(r.getValue(pkIndex).getRaw());
+                }
+            }
+        }
+        keyFilter = filter;
+        summariesMissing = false;
+    }
+
+    // Called by the catalog when loading, before bind()
+    public void setIndexRoot(int rootPid) {
+        this.indexRoot = rootPid;
+    }
+
+    /**
+     * @return the root pageId of the primary key index, or -1 if there is none
+     */
+    public int getIndexRoot() {
+        return (primaryIndex == null) ? -1 : primaryIndex.getRootPid();
+    }
+
+    public boolean hasIndex() {
+        return primaryIndex != null;
+    }
+
+    /**
+     * Builds the primary key index from the records already in the table.
+     * Does nothing if the table is already indexed.
+     */
+    public void enableIndex() throws DBException {
+        if (primaryIndex != null) return;
+
+        primaryIndex = new BPlusTree(storage, buffer);
+        int pkIndex = pkIndex();
+        for (int pid : pageIds) {
+            List<Record> records = buffer.getPage(pid).getRecords();
+            for (int slot = 0; slot < records.size(); slot++) {
+                primaryIndex.insert(records.get(slot).getValue(pkIndex), new Record_ID(pid, slot));
+            }
+        }
+    }
+
+    /**
+     * Frees the pages of the primary key index, if there is one.
+     */
+    public void dropIndex() throws DBException {
+        if (primaryIndex == null) return;
+
+        for (int pid : primaryIndex.getPageIds()) {
+            buffer.discardPage(pid);
+            storage.freePage(pid);
+        }
+        primaryIndex = null;
+        indexRoot = -1;
+    }
+
+    /**
+     * Creates an index on one attribute and fills it from the records already in the table.
+     * @param indexName name the index is known by
+     * @param attrName attribute to index
+     * @param type kind of index, see SecondaryIndex
+     */
+    public void createIndex(String indexName, String attrName, String type) throws DBException {
+        SecondaryIndex si = SecondaryIndex.create(indexName, attrName, type, storage, buffer);
+        fillIndex(si);
+        secondaryIndexes.add(si);
+    }
+
+    /**
+     * Fills a bitmap index from the table if it hasn't been yet. Bitmap indexes
+     * aren't persisted, so after a restart this happens on first use.
+     * @param si one of this table's indexes
+     */
+    public void buildIndex(SecondaryIndex si) throws DBException {
+        if (!(si.getIndex() instanceof BitmapIndex bitmap) || bitmap.isBuilt()) return;
+        bitmap.markBuilt();
+        fillIndex(si);
+    }
+
+    private void fillIndex(SecondaryIndex si) throws DBException {
+        int attrIndex = schema.getAttributeIndex(si.getAttribute());
+        for (int pid : pageIds) {
+            List<Record> records = buffer.getPage(pid).getRecords();
+            for (int slot = 0; slot < records.size(); slot++) {
+                si.getIndex().insert(records.get(slot).getValue(attrIndex), new Record_ID(pid, slot));
+            }
+        }
+    }
+
+    // Called by the catalog when loading, before bind()
+    public void addSecondaryIndex(SecondaryIndex si) {
+        secondaryIndexes.add(si);
+    }
+
+    public List<SecondaryIndex> getSecondaryIndexes() {
+        return secondaryIndexes;
+    }
+
+    /**
+     * @param attrIndex position of an attribute in the schema
+     * @param type kind of index wanted
+     * @return an index of that kind on the attribute, or null if there isn't one
+     */
+    public SecondaryIndex findSecondaryIndex(int attrIndex, String type) {
+        for (SecondaryIndex si : secondaryIndexes) {
+            if (si.getType().equals(type) && schema.getAttributeIndex(si.getAttribute()) == attrIndex) {
+                return si;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Frees the pages of every index made with CREATE INDEX.
+     */
+    public void dropSecondaryIndexes() throws DBException {
+        for (SecondaryIndex si : secondaryIndexes) {
+            for (int pid : si.getIndex().getPageIds()) {
+                buffer.discardPage(pid);
+                storage.freePage(pid);
+            }
+        }
+        secondaryIndexes.clear();
     }
 
     public List<Integer> getPageIds() {
         return pageIds;
     }
 
+    public int getFillFactor() {
+        return fillFactor;
+    }
+
+    public void setFillFactor(int percent) throws DBException {
+        if (percent < 10 || percent > 100) {
+            throw new DBException("FILLFACTOR must be between 10 and 100");
+        }
+        fillFactor = percent;
+    }
+
+    /**
+     * Sets how empty a page has to get, as a percent of the page size, before
+     * it is merged with its neighbour
+     * @param percent 0 turns merging off, 100 merges any pages that fit together
+     */
+    public void setMergeThreshold(int percent) throws DBException {
+        if (percent < 0 || percent > 100) {
+            throw new DBException("Merge threshold must be between 0 and 100");
+        }
+        mergeThreshold = percent;
+    }
+
+    public int getMergeThreshold() {
+        return mergeThreshold;
+    }
+
+    /**
+     * @return the smallest primary key on each page, parallel to getPageIds(); null for an empty page
+     */
+    public List<Value> getMinKeys() {
+        return minKeys;
+    }
+
+    /**
+     * @return the largest primary key on each page, parallel to getPageIds(); null for an empty page
+     */
+    public List<Value> getMaxKeys() {
+        return maxKeys;
+    }
+
+    /**
+     * @return the zone map of each page, by pageId; a page without one can hold anything
+     */
+    public Map<Integer, ZoneMap> getZones() {
+        return zones;
+    }
+
+    // Called by the catalog when loading
+    public void setZone(int pid, ZoneMap zone) {
+        zones.put(pid, zone);
+    }
+
+    /**
+     * @return the primary key filter, or null if it hasn't been built
+     */
+    public BloomFilter getKeyFilter() {
+        return keyFilter;
+    }
+
+    // Called by the catalog when loading
+    public void setKeyFilter(BloomFilter filter) {
+        keyFilter = filter;
+    }
+
+    /**
+     * Asks the primary key filter about a key, building the filter first if
+     * the table doesn't have one yet
+     * @param key raw primary key value
+     * @return false only if no record in the table has the key
+     */
+    public boolean mayContainKey(Object key) throws DBException {
+        if (temporary) return true;
+        if (keyFilter == null) {
+            BloomFilter filter = new BloomFilter();
+            int pkIndex = pkIndex();
+            for (int pid : pageIds) {
+                for (Record r : buffer.getPage(pid).getRecords()) {
+                    filter.add(r.getValue(pkIndex).getRaw());
+                }
+            }
+            keyFilter = filter;
+        }
+        return keyFilter.mightContain(key);
+    }
+
+    /**
+     * @return the statistics from the last ANALYZE, or null if there was none
+     */
+    public TableStats getStats() {
+        return stats;
+    }
+
+    // Called by the catalog when loading
+    public void setStats(TableStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Reads every page and replaces the table's statistics with what it found
+     * @return the new statistics
+     */
+    public TableStats analyze() throws DBException {
+        if (storage == null || buffer == null) {
+            throw new DBException("Table not bound to storage/buffer");
+        }
+        TableStats.Collector collector = new TableStats.Collector(schema.getAttributes().size());
+        for (int pid : pageIds) {
+            for (Record r : buffer.getPage(pid).getRecords()) {
+                collector.add(r);
+            }
+        }
+        stats = collector.finish(pageIds.size());
+        return stats;
+    }
+
+    private void addKey(Object key) {
+        // an unbuilt filter picks the key up from the page when it is built
+        if (keyFilter != null && !temporary) {
+            keyFilter.add(key);
+        }
+    }
+
     @Override
     public String name() {
         return name;
@@ -76,97 +431,731 @@ public class TableSchema implements Table {
             throw new DBException("Table not bound to storage/buffer");
         }
 
-        schema.validate(record);
+        // rows copied into temp tables were already validated by their source table
+        if (!temporary) {
+            schema.validate(record);
+        }
 
         Attribute pk = schema.getPrimaryKey();
         if (pk == null && !allowDup) {
             throw new DBException("Table has no primary key");
         }
         int pkIndex = schema.getAttributeIndex(pk.getName());
-        Object pkValue = record.getAttributes().get(pkIndex).getRaw();
+        Object pkValue = record.getValue(pkIndex).getRaw();
 
-        // check duplicates + find insertion page
-        for (int i = 0; i < pageIds.size(); i++) {
-            int pid = pageIds.get(i);
-            Page p = buffer.getPage(pid);
-            List<Record> records = p.getRecords();
+        if (pageIds.isEmpty()) {
+            // no pages yet
+            int pid = storage.allocatePage();
+            pageIds.add(pid);
+            minKeys.add(null);
+            maxKeys.add(null);
+            pageIndexes = null;
+            Page newPage = buffer.getPage(pid);
+            newPage.addRecord(record);
+            buffer.markDirty(pid);
+            refreshFence(0, newPage);
+            refreshZone(newPage);
+            addKey(pkValue);
+            indexInsert(record, pid, 0);
+            return;
+        }
+
+        // a key past the table's largest can't be a duplicate and belongs on the last page
+        int last = pageIds.size() - 1;
+        if (pkValue != null && maxKeys.get(last) != null && compareKeys(pkValue, maxKeys.get(last).getRaw()) > 0) {
+            placeRecord(last, record, pkIndex);
+            return;
+        }
 
-            for (Record existing : records) {
-                Object existingPk = existing.getAttributes().get(pkIndex).getRaw();
-                if (pkValue != null && pkValue.equals(existingPk) && !allowDup) {
-                    throw new DBException("duplicate primary key value: ( " + pkValue + " )");
+        // the fences pick the only page that could already hold this key, or that should receive it
+        int i = findPageIndex(pkValue);
+        if (pkValue != null && !allowDup && mayContainKey(pkValue)) {
+            boolean found;
+            if (primaryIndex != null) {
+                found = !primaryIndex.search(new Value(pkValue)).isEmpty();
+            } else {
+                found = searchPage(buffer.getPage(pageIds.get(i)).getRecords(), pkValue, pkIndex) >= 0;
+            }
+            if (found) {
+                throw new DBException("duplicate primary key value: ( " + pkValue + " )");
+            }
+        }
+        placeRecord(i, record, pkIndex);
+    }
+
+    /**
+     * Whether a batch should go through bulkInsert() rather than insert() a row
+     * at a time. bulkInsert() rewrites every page it touches whole, which only
+     * pays off once the batch holds at least a page of rows; a smaller batch
+     * lands on a page or two either way and is cheaper placed row by row.
+     * @param rows rows to insert
+     * @return true if the rows would fill a page of this table
+     */
+    public boolean worthBulkLoading(List<Record> rows) {
+        if (buffer == null || rows.size() < 2) return false;
+        int bytes = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            bytes += buffer.recordSizeBytes(rows.get(i));
+            if (BufferManager.pageBytesNeeded(i + 1, bytes) >= buffer.getPageSize()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Inserts a batch of rows in one pass over the table instead of one page
+     * search per row. The rows are sorted by primary key and merged with each
+     * page they land on; pages that overflow are repacked to the fill factor
+     * and the extra pages are allocated together.
+     * <br>
+     * Rows are taken in order up to the first one insert() would reject, so the
+     * caller can hand that row to insert() to get its error.
+     * @param rows rows to insert, in statement order
+     * @return how many leading rows were inserted
+     */
+    public int bulkInsert(List<Record> rows) throws DBException {
+        if (storage == null || buffer == null) {
+            throw new DBException("Table not bound to storage/buffer");
+        }
+        if (schema.getPrimaryKey() == null) return 0;
+        int pkIndex = pkIndex();
+
+        // first row that fails validation
+        int cutoff = rows.size();
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                schema.validate(rows.get(i));
+            } catch (DBException e) {
+                cutoff = i;
+                break;
+            }
+        }
+
+        // sort by key, ties in statement order
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < cutoff; i++) order.add(i);
+        order.sort((a, b) -> {
+            int c = compareKeys(rows.get(a).getValue(pkIndex).getRaw(), rows.get(b).getValue(pkIndex).getRaw());
+            return (c != 0) ? c : Integer.compare(a, b);
+        });
+
+        // a key repeated within the batch fails on its second occurrence
+        for (int j = 1; j < order.size(); j++) {
+            Object key = rows.get(order.get(j)).getValue(pkIndex).getRaw();
+            if (key != null && compareKeys(key, rows.get(order.get(j - 1)).getValue(pkIndex).getRaw()) == 0) {
+                cutoff = Math.min(cutoff, order.get(j));
+            }
+        }
+
+        // a key already in the table fails too; sorted keys visit each page once
+        if (!pageIds.isEmpty()) {
+            int cachedIndex = -1;
+            List<Record> cached = null;
+            for (int ordinal : order) {
+                if (ordinal >= cutoff) continue;
+                Object key = rows.get(ordinal).getValue(pkIndex).getRaw();
+                if (key == null || !mayContainKey(key)) continue;
+                int i = findPageIndex(key);
+                if (i != cachedIndex) {
+                    cachedIndex = i;
+                    cached = buffer.getPage(pageIds.get(i)).getRecords();
+                }
+                if (searchPage(cached, key, pkIndex) >= 0) {
+                    cutoff = Math.min(cutoff, ordinal);
                 }
             }
+        }
+
+        List<Record> sorted = new ArrayList<>();
+        for (int ordinal : order) {
+            if (ordinal < cutoff) sorted.add(rows.get(ordinal));
+        }
+        if (sorted.isEmpty()) return cutoff;
+
+        if (pageIds.isEmpty()) {
+            int pid = storage.allocatePage();
+            pageIds.add(pid);
+            minKeys.add(null);
+            maxKeys.add(null);
+            pageIndexes = null;
+            buffer.newPage(pid);
+        }
+
+        // group rows by the page they belong on; groups come out in page order
+        List<Integer> groupPages = new ArrayList<>();
+        List<List<Record>> groups = new ArrayList<>();
+        for (Record r : sorted) {
+            int i = findPageIndex(r.getValue(pkIndex).getRaw());
+            if (groupPages.isEmpty() || groupPages.get(groupPages.size() - 1) != i) {
+                groupPages.add(i);
+                groups.add(new ArrayList<>());
+            }
+            groups.get(groups.size() - 1).add(r);
+        }
+
+        // last page first, so adding pages never shifts a page index still to be visited
+        for (int g = groups.size() - 1; g >= 0; g--) {
+            mergeIntoPage(groupPages.get(g), groups.get(g), pkIndex);
+        }
+        for (Record r : sorted) {
+            addKey(r.getValue(pkIndex).getRaw());
+        }
+        return cutoff;
+    }
 
-            boolean isLastPage = (i == pageIds.size() - 1);
+    /**
+     * Merges sorted rows into the page at pageIds[pageIndex]. If the result
+     * doesn't fit, it is spread over that page and as many new pages as needed,
+     * placed right after it.
+     */
+    private void mergeIntoPage(int pageIndex, List<Record> incoming, int pkIndex) throws DBException {
+        int pid = pageIds.get(pageIndex);
+        Page page = buffer.getPage(pid);
+        List<Record> existing = new ArrayList<>(page.getRecords());
+
+        List<Record> merged = new ArrayList<>(existing.size() + incoming.size());
+        int a = 0;
+        int b = 0;
+        while (a < existing.size() || b < incoming.size()) {
+            if (b == incoming.size() || (a < existing.size()
+                    && compareKeys(existing.get(a).getValue(pkIndex).getRaw(), incoming.get(b).getValue(pkIndex).getRaw()) <= 0)) {
+                merged.add(existing.get(a++));
+            } else {
+                merged.add(incoming.get(b++));
+            }
+        }
+
+        // cut the merged run into page-sized chunks
+        int pageSize = buffer.getPageSize();
+        List<Integer> chunkStarts = new ArrayList<>();
+        chunkStarts.add(0);
+        int total = 0;
+        for (Record r : merged) total += buffer.recordSizeBytes(r);
+        if (BufferManager.pageBytesNeeded(merged.size(), total) > pageSize) {
+            int target = pageSize * fillFactor / 100;
+            int count = 0;
+            int bytes = 0;
+            for (int i = 0; i < merged.size(); i++) {
+                int size = buffer.recordSizeBytes(merged.get(i));
+                if (count > 0 && BufferManager.pageBytesNeeded(count + 1, bytes + size) > target) {
+                    chunkStarts.add(i);
+                    count = 0;
+                    bytes = 0;
+                }
+                count++;
+                bytes += size;
+            }
+        }
+        chunkStarts.add(merged.size());
+
+        // first chunk stays on the original page
+        List<Record> records = page.getRecords();
+        records.clear();
+        records.addAll(merged.subList(0, chunkStarts.get(1)));
+        buffer.markDirty(pid);
+        refreshFence(pageIndex, page);
+        refreshZone(page);
+
+        int extra = chunkStarts.size() - 2;
+        int[] newPids = (extra > 0) ? storage.allocatePages(extra) : new int[0];
+        for (int c = 0; c < extra; c++) {
+            Page newPage = buffer.newPage(newPids[c]);
+            newPage.getRecords().addAll(merged.subList(chunkStarts.get(c + 1), chunkStarts.get(c + 2)));
+            buffer.markDirty(newPids[c]);
+
+            pageIds.add(pageIndex + 1 + c, newPids[c]);
+            minKeys.add(pageIndex + 1 + c, null);
+            maxKeys.add(pageIndex + 1 + c, null);
+            pageIndexes = null;
+            refreshFence(pageIndex + 1 + c, newPage);
+            refreshZone(newPage);
+        }
+
+        // every page is written and fits, now the indexes can be brought up to date
+        if (!hasAnyIndex()) return;
+        Set<Record> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+        moved.addAll(existing);
+        for (int c = 0; c < extra + 1; c++) {
+            int chunkPid = (c == 0) ? pid : newPids[c - 1];
+            for (int i = chunkStarts.get(c); i < chunkStarts.get(c + 1); i++) {
+                Record r = merged.get(i);
+                if (moved.contains(r)) {
+                    if (c == 0) continue;
+                    indexDelete(r, pid);
+                }
+                indexInsert(r, chunkPid, i - chunkStarts.get(c));
+            }
+        }
+    }
 
-            // record belongs in this page if its key <= last key on page, OR this is the last page
-            Object lastPk = records.isEmpty() ? null : records.get(records.size() - 1).getAttributes().get(pkIndex).getRaw();
-            if (records.isEmpty() || compareKeys(pkValue, lastPk) <= 0 || isLastPage) {
-                if (buffer.canFitRecord(p, record)) {
-                    insertIntoSortedPosition(records, record, pkIndex);
-                    buffer.markDirty(pid);
-                    return;
+    /**
+     * Binary searches the fence keys for the page a key belongs on: the first
+     * non-empty page whose largest key is >= key, or the last page if there is none.
+     * Only valid for tables kept in key order through insert().
+     * @param key raw primary key value
+     * @return index into getPageIds()
+     */
+    public int findPageIndex(Object key) {
+        int lo = 0;
+        int hi = pageIds.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            // empty pages have no fences, probe the next page that does
+            int probe = mid;
+            while (probe < hi && maxKeys.get(probe) == null) probe++;
+
+            if (probe == hi) {
+                hi = mid;
+            } else if (compareKeys(maxKeys.get(probe).getRaw(), key) >= 0) {
+                hi = probe;
+            } else {
+                lo = probe + 1;
+            }
+        }
+        // lo can stop on empty pages in front of the one that holds the key
+        while (lo < pageIds.size() && maxKeys.get(lo) == null) lo++;
+        return Math.min(lo, pageIds.size() - 1);
+    }
+
+    /**
+     * Finds the run of pages that can hold primary keys between two bounds,
+     * using only the fence keys.
+     * @param low smallest key wanted, or null for no lower bound
+     * @param high largest key wanted, or null for no upper bound
+     * @return {first, end}: the pages pageIds[first] up to but not including pageIds[end]
+     */
+    public int[] pageSpan(Value low, Value high) {
+        int first = (low == null || pageIds.isEmpty()) ? 0 : findPageIndex(low.getRaw());
+
+        // first non-empty page whose smallest key is past high
+        int lo = first;
+        int hi = pageIds.size();
+        if (high != null) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int probe = mid;
+                while (probe < hi && minKeys.get(probe) == null) probe++;
+
+                if (probe == hi || compareKeys(minKeys.get(probe).getRaw(), high.getRaw()) > 0) {
+                    hi = mid;
                 } else {
-                    insertIntoSortedPosition(records, record, pkIndex);
-                    splitPage(i, p);
-                    buffer.markDirty(pid);
-                    return;
+                    lo = probe + 1;
                 }
             }
         }
+        return new int[]{first, (high == null) ? pageIds.size() : lo};
+    }
+
+    /**
+     * Binary searches a key-ordered page for a key
+     * @return the slot holding the key, or (-(insertion point) - 1) if it isn't there
+     */
+    private int searchPage(List<Record> records, Object key, int pkIndex) {
+        int lo = 0;
+        int hi = records.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareKeys(records.get(mid).getValue(pkIndex).getRaw(), key);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Recomputes the fence keys of the page at pageIds[pageIndex] from its first and last record.
+     */
+    private void refreshFence(int pageIndex, Page page) {
+        Attribute pk = schema.getPrimaryKey();
+        if (pk == null || page.size() == 0) {
+            minKeys.set(pageIndex, null);
+            maxKeys.set(pageIndex, null);
+            return;
+        }
+        int pkIndex = schema.getAttributeIndex(pk.getName());
+        List<Record> records = page.getRecords();
+        minKeys.set(pageIndex, new Value(records.get(0).getValue(pkIndex).getRaw()));
+        maxKeys.set(pageIndex, new Value(records.get(records.size() - 1).getValue(pkIndex).getRaw()));
+    }
+
+    /**
+     * Recomputes the zone map of a page from all of its records.
+     */
+    private void refreshZone(Page page) {
+        if (temporary) return;
+        zones.put(page.getPageID(), ZoneMap.of(page.getRecords(), schema.getAttributes().size()));
+    }
+
+    /**
+     * Puts a record into its sorted position on the page at pageIds[pageIndex],
+     * splitting the page if it no longer fits.
+     */
+    private void placeRecord(int pageIndex, Record record, int pkIndex) throws DBException {
+        int pid = pageIds.get(pageIndex);
+        Page p = buffer.getPage(pid);
+        boolean fits = buffer.canFitRecord(p, record);
+
+        int slot = insertIntoSortedPosition(p.getRecords(), record, pkIndex);
+        buffer.markDirty(pid);
+        refreshFence(pageIndex, p);
+        ZoneMap zone = zones.get(pid);
+        if (zone != null) zone.add(record);
+        addKey(record.getValue(pkIndex).getRaw());
+
+        // split before touching the index, so an overfull page is never evicted and written out
+        if (!fits && splitPage(pageIndex, slot) <= slot) {
+            // the record moved to the new page, which splitPage already indexed
+            return;
+        }
+        indexInsert(record, pid, slot);
+    }
+
+    private int insertIntoSortedPosition(List<Record> records, Record record, int pkIndex) {
+        Object newPk = record.getValue(pkIndex).getRaw();
 
-        // no pages yet
-        int pid = storage.allocatePage();
-        pageIds.add(pid);
-        Page newPage = buffer.getPage(pid);
-        newPage.addRecord(record);
+        // after any equal keys, same as a linear scan for the first larger key
+        int lo = 0;
+        int hi = records.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKeys(newPk, records.get(mid).getValue(pkIndex).getRaw()) < 0) hi = mid;
+            else lo = mid + 1;
+        }
+
+        records.add(lo, record);
+        return lo;
+    }
+
+    /**
+     * Removes the record at a slot of one of this table's pages, keeping the
+     * primary key index in step.
+     * @param pid a page of this table
+     * @param slot position of the record on the page
+     * @return the removed record
+     */
+    public Record removeRecordAt(int pid, int slot) throws DBException {
+        // fetched here rather than passed in, index maintenance can evict pages between calls
+        Page page = buffer.getPage(pid);
+        Record removed = page.removeRecordAt(slot);
         buffer.markDirty(pid);
+        refreshFence(pageIndexOf(pid), page);
+        ZoneMap zone = zones.get(pid);
+        if (zone != null) zone.remove(removed);
+        indexDelete(removed, pid);
+        return removed;
     }
 
-    private void insertIntoSortedPosition(List<Record> records, Record record, int pkIndex) {
-        Object newPk = record.getAttributes().get(pkIndex).getRaw();
+    /**
+     * Removes the marked records of one of this table's pages in a single pass
+     * over it, keeping the indexes in step. The fences are refreshed once,
+     * however many records go.
+     * @param pid a page of this table
+     * @param remove for each slot on the page, whether its record is removed
+     * @return the number of records removed
+     */
+    public int removeRecordsAt(int pid, boolean[] remove) throws DBException {
+        // fetched here rather than passed in, index maintenance can evict pages between calls
+        Page page = buffer.getPage(pid);
+        List<Record> records = page.getRecords();
+        List<Record> removed = new ArrayList<>();
+        int kept = 0;
+        for (int slot = 0; slot < records.size(); slot++) {
+            if (remove[slot]) {
+                removed.add(records.get(slot));
+            } else {
+                records.set(kept++, records.get(slot));
+            }
+        }
+        if (removed.isEmpty()) return 0;
 
+        records.subList(kept, records.size()).clear();
+        buffer.markDirty(pid);
+        refreshFence(pageIndexOf(pid), page);
+        ZoneMap zone = zones.get(pid);
+        for (Record r : removed) {
+            if (zone != null) zone.remove(r);
+            indexDelete(r, pid);
+        }
+        return removed.size();
+    }
+
+    /**
+     * @return where a page of this table sits in getPageIds()
+     */
+    private int pageIndexOf(int pid) {
+        if (pageIndexes == null) {
+            pageIndexes = new HashMap<>();
+            for (int i = 0; i < pageIds.size(); i++) {
+                pageIndexes.put(pageIds.get(i), i);
+            }
+        }
+        return pageIndexes.get(pid);
+    }
+
+    /**
+     * Merges pages left underfull by deletes into their right neighbour and
+     * frees pages that ended up empty.
+     * @return the number of pages freed
+     */
+    public int mergeUnderfull() throws DBException {
+        return mergePages(mergeThreshold);
+    }
+
+    /**
+     * Packs the table as tightly as merging neighbours allows, whatever the threshold.
+     * @return the number of pages freed
+     */
+    public int vacuum() throws DBException {
+        int freed = mergePages(100);
+        // every page has been read anyway, so the zone maps can be tightened too
+        for (int pid : pageIds) {
+            refreshZone(buffer.getPage(pid));
+        }
+        return freed;
+    }
+
+    private int mergePages(int thresholdPercent) throws DBException {
+        if (storage == null || buffer == null) {
+            throw new DBException("Table not bound to storage/buffer");
+        }
+        int limit = buffer.getPageSize() * thresholdPercent / 100;
+        int freed = 0;
+
+        int i = 0;
+        while (i < pageIds.size()) {
+            int pid = pageIds.get(i);
+            Page page = buffer.getPage(pid);
+
+            if (page.size() == 0) {
+                // nothing on it, and nothing of it in the index
+                removePage(i);
+                freed++;
+                continue;
+            }
+            if (i + 1 == pageIds.size() || buffer.usedBytes(page) >= limit) {
+                i++;
+                continue;
+            }
+
+            int rightPid = pageIds.get(i + 1);
+            Page right = buffer.getPage(rightPid);
+            page = buffer.getPage(pid);
+            if (right.size() > 0 && buffer.usedBytes(page) + buffer.usedBytes(right) - 4 > buffer.getPageSize()) {
+                i++;
+                continue;
+            }
+
+            // the right page's keys are all larger, so appending keeps the page sorted
+            int firstMoved = page.size();
+            List<Record> moved = new ArrayList<>(right.getRecords());
+            page.getRecords().addAll(moved);
+            buffer.markDirty(pid);
+            refreshFence(i, page);
+            ZoneMap zone = zones.get(pid);
+            ZoneMap rightZone = zones.get(rightPid);
+            if (zone != null && rightZone != null) {
+                zone.absorb(rightZone);
+            } else {
+                refreshZone(page);
+            }
+            removePage(i + 1);
+            freed++;
+
+            for (int slot = 0; slot < moved.size(); slot++) {
+                indexDelete(moved.get(slot), rightPid);
+                indexInsert(moved.get(slot), pid, firstMoved + slot);
+            }
+            // stay on this page, it may be able to take the next one too
+        }
+        return freed;
+    }
+
+    /**
+     * Drops the page at pageIds[pageIndex] from the table and hands it back to storage.
+     */
+    private void removePage(int pageIndex) throws DBException {
+        int pid = pageIds.remove(pageIndex);
+        minKeys.remove(pageIndex);
+        maxKeys.remove(pageIndex);
+        pageIndexes = null;
+        zones.remove(pid);
+        buffer.discardPage(pid);
+        storage.freePage(pid);
+    }
+
+    /**
+     * Sets one attribute of a record stored on one of this table's pages.
+     * Changing the primary key takes the record out and inserts it again,
+     * so the table stays in key order and the index stays correct.
+     * @param pid page holding the record
+     * @param record the record to change
+     * @param attrIndex index of the attribute to set
+     * @param value the new value
+     */
+    public void updateRecord(int pid, Record record, int attrIndex, Value value) throws DBException {
+        Page p = buffer.getPage(pid);
+        int slot = slotOf(p, record);
+
+        if (attrIndex != pkIndex()) {
+            Record live = p.getRecords().get(slot);
+            Value old = live.getValue(attrIndex);
+            live.getAttributes().set(attrIndex, value);
+            buffer.markDirty(pid);
+            ZoneMap zone = zones.get(pid);
+            if (zone != null) {
+                zone.remove(attrIndex, old.getRaw());
+                zone.add(attrIndex, value.getRaw());
+            }
+
+            for (SecondaryIndex si : secondaryIndexes) {
+                if (schema.getAttributeIndex(si.getAttribute()) == attrIndex) {
+                    si.getIndex().delete(old, new Record_ID(pid, -1));
+                    si.getIndex().insert(value, new Record_ID(pid, slot));
+                }
+            }
+            return;
+        }
+
+        Record moved = new Record();
+        for (int i = 0; i < record.size(); i++) {
+            moved.addAttribute(i == attrIndex ? value : record.getValue(i));
+        }
+        schema.validate(moved);
+
+        removeRecordAt(pid, slot);
+        insert(moved);
+    }
+
+    /**
+     * Finds where a record sits on a page. If the page was evicted and read back
+     * since the caller got the record, the record is matched by its key instead.
+     */
+    private int slotOf(Page page, Record record) throws DBException {
+        List<Record> records = page.getRecords();
+        int slot = records.indexOf(record);
+        if (slot != -1) return slot;
+
+        int pkIndex = pkIndex();
+        Object key = record.getValue(pkIndex).getRaw();
         for (int i = 0; i < records.size(); i++) {
-            Object currentPk = records.get(i).getAttributes().get(pkIndex).getRaw();
-            if (compareKeys(newPk, currentPk) < 0) {
-                records.add(i, record);
-                return;
+            if (compareKeys(key, records.get(i).getValue(pkIndex).getRaw()) == 0) return i;
+        }
+        throw new DBException("Record not found on page " + page.getPageID());
+    }
+
+    /**
+     * Finds the record with the given primary key value
+     * @param pkValue raw primary key value
+     * @return the record, or null if no record has that key
+     */
+    public Record findByKey(Object pkValue) throws DBException {
+        if (pkValue == null || !mayContainKey(pkValue)) return null;
+
+        int pkIndex = pkIndex();
+        if (pageIds.isEmpty()) return null;
+        List<Integer> candidates = List.of(pageIds.get(findPageIndex(pkValue)));
+        if (primaryIndex != null) {
+            candidates = new ArrayList<>();
+            for (Record_ID rid : primaryIndex.search(new Value(pkValue))) {
+                candidates.add(rid.getPageId());
+            }
+        }
+
+        for (int pid : candidates) {
+            for (Record r : buffer.getPage(pid).getRecords()) {
+                if (pkValue.equals(r.getValue(pkIndex).getRaw())) {
+                    return r;
+                }
             }
         }
+        return null;
+    }
 
-        records.add(record);
+    private int pkIndex() {
+        return schema.getAttributeIndex(schema.getPrimaryKey().getName());
     }
 
-    @SuppressWarnings("unchecked")
-    private int compareKeys(Object a, Object b) {
-        if (a == null && b == null) return 0;
-        if (a == null) return -1;
-        if (b == null) return 1;
+    private void indexInsert(Record record, int pid, int slot) throws DBException {
+        if (primaryIndex != null) {
+            primaryIndex.insert(record.getValue(pkIndex()), new Record_ID(pid, slot));
+        }
+        for (SecondaryIndex si : secondaryIndexes) {
+            si.getIndex().insert(record.getValue(schema.getAttributeIndex(si.getAttribute())), new Record_ID(pid, slot));
+        }
+    }
 
-        if (a.getClass().equals(b.getClass()) && a instanceof Comparable) {
-            return ((Comparable<Object>) a).compareTo(b);
+    private void indexDelete(Record record, int pid) throws DBException {
+        if (primaryIndex != null) {
+            primaryIndex.delete(record.getValue(pkIndex()), new Record_ID(pid, -1));
+        }
+        for (SecondaryIndex si : secondaryIndexes) {
+            si.getIndex().delete(record.getValue(schema.getAttributeIndex(si.getAttribute())), new Record_ID(pid, -1));
         }
+    }
+
+    private boolean hasAnyIndex() {
+        return primaryIndex != null || !secondaryIndexes.isEmpty();
+    }
 
-        return a.toString().compareTo(b.toString());
+    private int compareKeys(Object a, Object b) {
+        return Value.compareRaw(a, b);
     }
 
-    private void splitPage(int pageIndex, Page page) throws DBException {
+    /**
+     * Moves the upper part of the page at pageIds[pageIndex] onto a new page
+     * placed right after it. Normally that is half the page, but when the
+     * record that overflowed it was added at the very end of the table the
+     * page keeps fillFactor percent and only the rest moves, since later
+     * inserts will keep landing on the new page.
+     * @param insertedSlot slot of the record that made the page overflow
+     * @return the first slot that was moved
+     */
+    private int splitPage(int pageIndex, int insertedSlot) throws DBException {
         int newPid = storage.allocatePage();
-        Page newPage = buffer.getPage(newPid);
+        Page newPage = buffer.newPage(newPid);
+        // re-fetch, index maintenance may have pushed the page out of the buffer
+        Page page = buffer.getPage(pageIds.get(pageIndex));
 
         int mid = page.size() / 2;
+        if (pageIndex == pageIds.size() - 1 && insertedSlot == page.size() - 1) {
+            int target = buffer.getPageSize() * fillFactor / 100;
+            int count = 0;
+            int bytes = 0;
+            for (Record r : page.getRecords()) {
+                int size = buffer.recordSizeBytes(r);
+                if (BufferManager.pageBytesNeeded(count + 1, bytes + size) > target) break;
+                count++;
+                bytes += size;
+            }
+            mid = Math.max(1, Math.min(count, page.size() - 1));
+        }
 
         // move second half into new page
+        List<Record> moved = new ArrayList<>();
         while (page.size() > mid) {
-            Record moved = page.removeRecordAt(mid);
-            newPage.addRecord(moved);
+            Record r = page.removeRecordAt(mid);
+            newPage.addRecord(r);
+            moved.add(r);
         }
 
         pageIds.add(pageIndex + 1, newPid);
+        minKeys.add(pageIndex + 1, null);
+        maxKeys.add(pageIndex + 1, null);
+        pageIndexes = null;
+        refreshFence(pageIndex, page);
+        refreshFence(pageIndex + 1, newPage);
+        refreshZone(page);
+        refreshZone(newPage);
 
         buffer.markDirty(page.getPageID());
         buffer.markDirty(newPid);
+
+        // moved records now live on the new page
+        for (int i = 0; i < moved.size(); i++) {
+            indexDelete(moved.get(i), page.getPageID());
+            indexInsert(moved.get(i), newPid, i);
+        }
+        return mid;
     }
 
 
@@ -184,10 +1173,15 @@ public class TableSchema implements Table {
         return result;
     }
 
+    // Appended rows aren't in key order, so appended pages get no fence keys
     public void append(Record record) throws DBException {
         if (pageIds.isEmpty()) {
             int pid = storage.allocatePage();
+            buffer.newPage(pid);
             pageIds.add(pid);
+            minKeys.add(null);
+            maxKeys.add(null);
+            pageIndexes = null;
         }
         int pid = pageIds.get(pageIds.size() - 1);
         Page p = buffer.getPage(pid);
@@ -197,7 +1191,10 @@ public class TableSchema implements Table {
         } else {
             int newPid = storage.allocatePage();
             pageIds.add(newPid);
-            Page newPage = buffer.getPage(newPid);
+            minKeys.add(null);
+            maxKeys.add(null);
+            pageIndexes = null;
+            Page newPage = buffer.newPage(newPid);
             newPage.addRecord(record);
             buffer.markDirty(newPid);
         }
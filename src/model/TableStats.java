@@ -0,0 +1,126 @@
+package model;
+
+import index.HyperLogLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Table statistics gathered by ANALYZE: how many records and pages the table
+ * had and a ColumnStats per attribute. They describe the table as it was
+ * when analyzed and aren't kept up to date by later changes; the planner
+ * uses them for estimates only, so stale numbers cost a worse plan, never a
+ * wrong answer.
+ */
+public class TableStats {
+
+    public static final int HISTOGRAM_BUCKETS = 20;
+    // histograms are built from a random sample of this many values per attribute
+    public static final int SAMPLE_SIZE = 10000;
+
+    private final long rowCount;
+    private final int pageCount;
+    private final ColumnStats[] columns;
+
+    public TableStats(long rowCount, int pageCount, ColumnStats[] columns) {
+        this.rowCount = rowCount;
+        this.pageCount = pageCount;
+        this.columns = columns;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public ColumnStats getColumn(int attrIndex) {
+        return columns[attrIndex];
+    }
+
+    public int size() {
+        return columns.length;
+    }
+
+    /**
+     * Gathers statistics from a table's records in one pass. Distinct values
+     * are counted with a HyperLogLog and histograms are cut from a reservoir
+     * sample, so memory stays the same however big the table is.
+     */
+    public static class Collector {
+        private final int numAttrs;
+        private final HyperLogLog[] distinct;
+        private final long[] nulls;
+        private final Object[] min;
+        private final Object[] max;
+        private final List<List<Object>> samples = new ArrayList<>();
+        private final long[] seen;
+        private final Random random = new Random(42);
+        private long rows;
+
+        public Collector(int numAttrs) {
+            this.numAttrs = numAttrs;
+            distinct = new HyperLogLog[numAttrs];
+            nulls = new long[numAttrs];
+            min = new Object[numAttrs];
+            max = new Object[numAttrs];
+            seen = new long[numAttrs];
+            for (int i = 0; i < numAttrs; i++) {
+                distinct[i] = new HyperLogLog();
+                samples.add(new ArrayList<>());
+            }
+        }
+
+        public void add(Record record) {
+            rows++;
+            for (int i = 0; i < numAttrs; i++) {
+                Object raw = record.getValue(i).getRaw();
+                if (raw == null) {
+                    nulls[i]++;
+                    continue;
+                }
+                distinct[i].add(raw);
+                if (min[i] == null || Value.compareRaw(raw, min[i]) < 0) min[i] = raw;
+                if (max[i] == null || Value.compareRaw(raw, max[i]) > 0) max[i] = raw;
+
+                // every value seen so far has had the same chance of being in the sample
+                List<Object> sample = samples.get(i);
+                seen[i]++;
+                if (sample.size() < SAMPLE_SIZE) {
+                    sample.add(raw);
+                } else {
+                    long slot = (long) (random.nextDouble() * seen[i]);
+                    if (slot < SAMPLE_SIZE) sample.set((int) slot, raw);
+                }
+            }
+        }
+
+        public TableStats finish(int pageCount) {
+            ColumnStats[] columns = new ColumnStats[numAttrs];
+            for (int i = 0; i < numAttrs; i++) {
+                List<Object> sample = samples.get(i);
+                sample.sort(Value::compareRaw);
+                Object[] bounds;
+                if (sample.isEmpty()) {
+                    bounds = new Object[0];
+                } else {
+                    int buckets = Math.min(HISTOGRAM_BUCKETS, sample.size());
+                    bounds = new Object[buckets + 1];
+                    for (int b = 0; b <= buckets; b++) {
+                        bounds[b] = sample.get((int) ((long) b * (sample.size() - 1) / buckets));
+                    }
+                    bounds[0] = min[i];
+                    bounds[buckets] = max[i];
+                }
+                // the sketch can overshoot on small columns
+                long estimate = Math.min(distinct[i].estimate(), rows - nulls[i]);
+                double nullFraction = (rows == 0) ? 0 : (double) nulls[i] / rows;
+                columns[i] = new ColumnStats(estimate, nullFraction, min[i], max[i], bounds);
+            }
+            return new TableStats(rows, pageCount, columns);
+        }
+    }
+}
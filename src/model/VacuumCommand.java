@@ -0,0 +1,22 @@
+package model;
+
+import parser.CommandType;
+
+public class VacuumCommand extends ParsedCommand {
+
+    private final String tableName;
+
+    public VacuumCommand(String tableName) {
+        this.tableName = tableName;
+    }
+
+    @Override
+    public CommandType getType() {
+        return CommandType.VACUUM;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+}
\ No newline at end of file
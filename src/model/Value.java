@@ -11,6 +11,27 @@ public class Value {
         return raw;
     }
 
+    /**
+     * Orders two raw values the same way records are ordered by primary key:
+     * NULL sorts first, values of the same Comparable type use their natural
+     * order, and anything else falls back to comparing string forms.
+     * @param a left raw value
+     * @param b right raw value
+     * @return negative, zero or positive like compareTo
+     */
+    @SuppressWarnings("unchecked")
+    public static int compareRaw(Object a, Object b) {
+        if (a == null && b == null) return 0;
+        if (a == null) return -1;
+        if (b == null) return 1;
+
+        if (a.getClass().equals(b.getClass()) && a instanceof Comparable) {
+            return ((Comparable<Object>) a).compareTo(b);
+        }
+
+        return a.toString().compareTo(b.toString());
+    }
+
 
     @Override
     public String toString() {
@@ -0,0 +1,145 @@
+package model;
+
+import parser.ANDTree;
+import parser.AttrNode;
+import parser.IWhereTree;
+import parser.KeyRange;
+import parser.ORTree;
+import parser.RelopNode;
+import parser.isNULLNode;
+
+import java.util.List;
+
+/**
+ * Summary of the records on one page: for every attribute the smallest and
+ * largest non-null value and the number of nulls. Checking a WHERE tree
+ * against it tells whether any record on the page can match without reading
+ * the page.
+ * <br>
+ * Inserts and updates widen the bounds. Deletes only lower the null counts,
+ * so after deletes the bounds may be wider than the records on the page, which
+ * costs a wasted read at worst. Splits, bulk loads and VACUUM recompute them.
+ */
+public class ZoneMap {
+
+    private final Object[] min;
+    private final Object[] max;
+    private final int[] nulls;
+
+    /**
+     * An empty summary, for a page with no records
+     * @param numAttrs number of attributes in the table
+     */
+    public ZoneMap(int numAttrs) {
+        this(new Object[numAttrs], new Object[numAttrs], new int[numAttrs]);
+    }
+
+    // Used when loading from the catalog
+    public ZoneMap(Object[] min, Object[] max, int[] nulls) {
+        this.min = min;
+        this.max = max;
+        this.nulls = nulls;
+    }
+
+    /**
+     * @return the exact summary of a page's records
+     */
+    public static ZoneMap of(List<Record> records, int numAttrs) {
+        ZoneMap zone = new ZoneMap(numAttrs);
+        for (Record r : records) {
+            zone.add(r);
+        }
+        return zone;
+    }
+
+    public void add(Record record) {
+        for (int i = 0; i < min.length; i++) {
+            add(i, record.getValue(i).getRaw());
+        }
+    }
+
+    public void add(int attrIndex, Object raw) {
+        if (raw == null) {
+            nulls[attrIndex]++;
+            return;
+        }
+        if (min[attrIndex] == null || Value.compareRaw(raw, min[attrIndex]) < 0) min[attrIndex] = raw;
+        if (max[attrIndex] == null || Value.compareRaw(raw, max[attrIndex]) > 0) max[attrIndex] = raw;
+    }
+
+    public void remove(Record record) {
+        for (int i = 0; i < min.length; i++) {
+            remove(i, record.getValue(i).getRaw());
+        }
+    }
+
+    /**
+     * Takes a value off the page. The bounds are left alone, finding the new
+     * ones would mean reading every record on the page.
+     */
+    public void remove(int attrIndex, Object raw) {
+        if (raw == null && nulls[attrIndex] > 0) {
+            nulls[attrIndex]--;
+        }
+    }
+
+    /**
+     * Widens this summary to also cover another page's records, for when that
+     * page's records move onto this one
+     */
+    public void absorb(ZoneMap other) {
+        for (int i = 0; i < min.length; i++) {
+            if (other.min[i] != null) {
+                add(i, other.min[i]);
+                add(i, other.max[i]);
+            }
+            nulls[i] += other.nulls[i];
+        }
+    }
+
+    /**
+     * @param where a WHERE tree over the table
+     * @param schema the table's schema
+     * @return false only if no record on the page can satisfy the tree
+     */
+    public boolean mayMatch(IWhereTree where, Schema schema) {
+        if (where instanceof ANDTree and) {
+            return mayMatch(and.getLeft(), schema) && mayMatch(and.getRight(), schema);
+        }
+        if (where instanceof ORTree or) {
+            return mayMatch(or.getLeft(), schema) || mayMatch(or.getRight(), schema);
+        }
+        if (where instanceof isNULLNode isNull && isNull.getOperand() instanceof AttrNode attr) {
+            int i = attr.getIndex(schema);
+            return i == -1 || nulls[i] > 0;
+        }
+        if (where instanceof RelopNode relop) {
+            AttrNode attr = (relop.getLeft() instanceof AttrNode a) ? a
+                    : (relop.getRight() instanceof AttrNode b) ? b : null;
+            int i = (attr == null) ? -1 : attr.getIndex(schema);
+            if (i == -1) return true;
+
+            // only a comparison against a constant of the right type gives a range
+            KeyRange range = KeyRange.of(relop, schema, i);
+            if (range.isUnbounded()) return true;
+            return min[i] != null && range.overlaps(min[i], max[i]);
+        }
+        return true;
+    }
+
+    public Object getMin(int attrIndex) {
+        return min[attrIndex];
+    }
+
+    public Object getMax(int attrIndex) {
+        return max[attrIndex];
+    }
+
+    public int getNullCount(int attrIndex) {
+        return nulls[attrIndex];
+    }
+
+    public int size() {
+        return min.length;
+    }
+}
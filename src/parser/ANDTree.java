@@ -4,6 +4,8 @@ import model.Record;
 import model.Schema;
 import util.DBException;
 
+import java.util.List;
+
 public class ANDTree implements IWhereTree{
     private IWhereTree leftN;
     private IWhereTree rightN;
@@ -13,8 +15,28 @@ public class ANDTree implements IWhereTree{
         this.rightN = rightN;
     }
 
+    public IWhereTree getLeft() {
+        return leftN;
+    }
+
+    public IWhereTree getRight() {
+        return rightN;
+    }
+
     @Override
     public boolean evaluate(Schema scheme, Record record) throws DBException {
         return leftN.evaluate(scheme, record) && rightN.evaluate(scheme, record);
     }
+
+    // the right side only sees what the left side kept
+    @Override
+    public int select(Schema scheme, List<Record> records, int[] sel, int n) throws DBException {
+        n = leftN.select(scheme, records, sel, n);
+        return (n == 0) ? 0 : rightN.select(scheme, records, sel, n);
+    }
+
+    @Override
+    public String toString() {
+        return leftN + " AND " + rightN;
+    }
 }
@@ -18,20 +18,53 @@ public class AttrNode implements IOperandNode{
 
     @Override
     public Value getVal(Schema scheme, Record record) throws DBException {
+        int attrIndex = getIndex(scheme);
+        if (attrIndex != -1) {
+            return record.getValue(attrIndex);
+        }
+
+        throw new DBException("Attribute {" + attrName + "} not found. Return value of -1.");
+    }
+
+    /**
+     * Looks the attribute up once for the whole batch
+     */
+    @Override
+    public Object[] getRaws(Schema scheme, List<Record> records, int[] sel, int n) throws DBException {
+        int attrIndex = getIndex(scheme);
+        if (attrIndex == -1) {
+            throw new DBException("Attribute {" + attrName + "} not found. Return value of -1.");
+        }
+        Object[] raws = new Object[n];
+        for (int i = 0; i < n; i++) {
+            raws[i] = records.get(sel[i]).getValue(attrIndex).getRaw();
+        }
+        return raws;
+    }
+
+    /**
+     * @param scheme schema to look the attribute up in
+     * @return the index of the attribute this node names, or -1 if it isn't there
+     */
+    public int getIndex(Schema scheme) {
         // Try exact match first
         int attrIndex = scheme.getAttributeIndex(attrName);
         if (attrIndex != -1) {
-            return record.getValue(attrIndex);
+            return attrIndex;
         }
 
         // Try suffix match for qualified names (e.g. "i1" matches "t2.i1")
         List<Attribute> attrs = scheme.getAttributes();
         for (int i = 0; i < attrs.size(); i++) {
             if (attrs.get(i).getName().endsWith("." + attrName)) {
-                return record.getValue(i);
+                return i;
             }
         }
+        return -1;
+    }
 
-        throw new DBException("Attribute {" + attrName + "} not found. Return value of -1.");
+    @Override
+    public String toString() {
+        return attrName;
     }
 }
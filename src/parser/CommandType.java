@@ -3,11 +3,15 @@ package parser;
 public enum CommandType {
 
     CREATE,
+    CREATE_INDEX,
     DROP,
     ALTER,
     INSERT,
     SELECT,
     DELETE,
-    UPDATE
+    UPDATE,
+    VACUUM,
+    ANALYZE,
+    EXPLAIN
 
 }
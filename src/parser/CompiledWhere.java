@@ -0,0 +1,333 @@
+package parser;
+
+import model.Record;
+import model.Schema;
+import util.DBException;
+
+import java.util.List;
+
+/**
+ * A WHERE tree compiled for one schema. Its AND and OR nodes are kept, so
+ * their own evaluate() and select() still combine the two sides, and each
+ * comparison and IS NULL below them is replaced by a leaf with everything
+ * the node would look up on every call settled once: attribute names become
+ * column positions and operator strings become the one comparison they
+ * stand for.
+ * <br>
+ * A leaf's evaluate() is a closure over one record; a column compared with
+ * a number unboxes the column and compares primitives. A leaf's select()
+ * pulls its column for the whole vector once, through getRaws(), and hands
+ * it to RelopNode's kernel with the operator and constant already bound, so
+ * batches run the same code as the uncompiled tree.
+ * <br>
+ * The closures make the same checks, and throw the same errors, as the
+ * tree's own evaluate(). Nodes the compiler doesn't know are called as they
+ * are. Asked about any schema other than the one it was compiled for, it
+ * hands the question to the tree.
+ */
+public final class CompiledWhere implements IWhereTree {
+
+    @FunctionalInterface
+    private interface Test {
+        boolean test(Record record) throws DBException;
+    }
+
+    @FunctionalInterface
+    private interface Operand {
+        Object raw(Record record) throws DBException;
+    }
+
+    // select() of one leaf, with the schema already applied
+    @FunctionalInterface
+    private interface Kernel {
+        int select(List<Record> records, int[] sel, int n) throws DBException;
+    }
+
+    private final IWhereTree tree;
+    private final Schema schema;
+    private final IWhereTree compiled;
+
+    private CompiledWhere(IWhereTree tree, Schema schema) {
+        this.tree = tree;
+        this.schema = schema;
+        this.compiled = compileNode(tree);
+    }
+
+    /**
+     * @param tree a WHERE tree, or null
+     * @param schema the schema of the records it will be checked against
+     * @return the compiled tree, or null if tree is
+     */
+    public static IWhereTree compile(IWhereTree tree, Schema schema) {
+        if (tree == null) return null;
+        if (tree instanceof CompiledWhere compiled) {
+            tree = compiled.tree;
+        }
+        return new CompiledWhere(tree, schema);
+    }
+
+    /**
+     * @return the tree this was compiled from
+     */
+    public IWhereTree getTree() {
+        return tree;
+    }
+
+    @Override
+    public boolean evaluate(Schema scheme, Record record) throws DBException {
+        return (scheme == schema) ? compiled.evaluate(schema, record) : tree.evaluate(scheme, record);
+    }
+
+    @Override
+    public int select(Schema scheme, List<Record> records, int[] sel, int n) throws DBException {
+        return (scheme == schema) ? compiled.select(schema, records, sel, n) : tree.select(scheme, records, sel, n);
+    }
+
+    @Override
+    public String toString() {
+        return tree.toString();
+    }
+
+    // the tree again, with its comparisons and IS NULLs compiled into leaves
+    private IWhereTree compileNode(IWhereTree node) {
+        if (node instanceof ANDTree and) {
+            return new ANDTree(compileNode(and.getLeft()), compileNode(and.getRight()));
+        }
+        if (node instanceof ORTree or) {
+            return new ORTree(compileNode(or.getLeft()), compileNode(or.getRight()));
+        }
+        if (node instanceof isNULLNode isNull) {
+            Operand operand = compileOperand(isNull.getOperand());
+            return new Leaf(node, r -> operand.raw(r) == null, (records, sel, n) -> node.select(schema, records, sel, n));
+        }
+        if (node instanceof RelopNode relop) {
+            return new Leaf(node, compileRelop(relop), compileRelopKernel(relop));
+        }
+        return node;
+    }
+
+    /**
+     * @return the batch form of a comparison: a column against a constant is
+     * pulled once and handed to RelopNode's kernel with the operator bound,
+     * anything else goes through the node's own select()
+     */
+    private Kernel compileRelopKernel(RelopNode relop) {
+        int op = RelopNode.operatorCode(relop.getOperator());
+        if (op != -1 && relop.getLeft() instanceof AttrNode attr && relop.getRight() instanceof ValueNode value) {
+            Object constant = value.value.getRaw();
+            return (records, sel, n) -> (n == 0) ? 0
+                    : RelopNode.selectAgainst(attr.getRaws(schema, records, sel, n), op, constant, sel, n);
+        }
+        if (op != -1 && relop.getLeft() instanceof ValueNode value && relop.getRight() instanceof AttrNode attr) {
+            Object constant = value.value.getRaw();
+            int mirrored = RelopNode.mirror(op);
+            return (records, sel, n) -> (n == 0) ? 0
+                    : RelopNode.selectAgainst(attr.getRaws(schema, records, sel, n), mirrored, constant, sel, n);
+        }
+        return (records, sel, n) -> relop.select(schema, records, sel, n);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Test compileRelop(RelopNode relop) {
+        String op = relop.getOperator();
+        if (!List.of("==", "<>", "<", ">", "<=", ">=").contains(op)) {
+            return r -> relop.evaluate(schema, r);
+        }
+
+        // a column against a number, turned around if the number is on the left
+        if (relop.getLeft() instanceof AttrNode attr && relop.getRight() instanceof ValueNode value) {
+            Test t = compareColumn(attr, op, value.value.getRaw());
+            if (t != null) return t;
+        }
+        if (relop.getLeft() instanceof ValueNode value && relop.getRight() instanceof AttrNode attr) {
+            Test t = compareColumn(attr, mirror(op), value.value.getRaw());
+            if (t != null) return t;
+        }
+
+        Operand left = compileOperand(relop.getLeft());
+        Operand right = compileOperand(relop.getRight());
+        Sign sign = sign(op);
+        return r -> {
+            Object a = left.raw(r);
+            Object b = right.raw(r);
+            check(a, b);
+            return sign.holds(((Comparable<Object>) a).compareTo(b));
+        };
+    }
+
+    /**
+     * @return a test of column op constant on unboxed values, or null if the
+     * constant isn't a number or the column isn't in the schema
+     */
+    private Test compareColumn(AttrNode attr, String op, Object constant) {
+        int i = attr.getIndex(schema);
+        if (i == -1) return null;
+
+        if (constant instanceof Integer c) {
+            int k = c;
+            return switch (op) {
+                case "==" -> r -> intAt(r, i) == k;
+                case "<>" -> r -> intAt(r, i) != k;
+                case "<" -> r -> intAt(r, i) < k;
+                case ">" -> r -> intAt(r, i) > k;
+                case "<=" -> r -> intAt(r, i) <= k;
+                default -> r -> intAt(r, i) >= k;
+            };
+        }
+        if (constant instanceof Double c) {
+            // Double.compare, not the primitive operators, so NaN and -0.0 order as compareTo does
+            double k = c;
+            return switch (op) {
+                case "==" -> r -> Double.compare(doubleAt(r, i), k) == 0;
+                case "<>" -> r -> Double.compare(doubleAt(r, i), k) != 0;
+                case "<" -> r -> Double.compare(doubleAt(r, i), k) < 0;
+                case ">" -> r -> Double.compare(doubleAt(r, i), k) > 0;
+                case "<=" -> r -> Double.compare(doubleAt(r, i), k) <= 0;
+                default -> r -> Double.compare(doubleAt(r, i), k) >= 0;
+            };
+        }
+        return null;
+    }
+
+    private Operand compileOperand(IOperandNode node) {
+        if (node instanceof AttrNode attr) {
+            int i = attr.getIndex(schema);
+            if (i == -1) {
+                return r -> attr.getVal(schema, r).getRaw();
+            }
+            return r -> r.getValue(i).getRaw();
+        }
+        if (node instanceof ValueNode value) {
+            Object raw = value.value.getRaw();
+            return r -> raw;
+        }
+        if (node instanceof arithmeticNode arith && List.of("+", "-", "*", "/").contains(arith.getOperation())) {
+            Operand left = compileOperand(arith.getLeft());
+            Operand right = compileOperand(arith.getRight());
+            char op = arith.getOperation().charAt(0);
+            return r -> arithmetic(left.raw(r), right.raw(r), op);
+        }
+        return r -> node.getVal(schema, r).getRaw();
+    }
+
+    // what arithmeticNode.getVal() works out, with the same errors
+    private static Object arithmetic(Object left, Object right, char op) throws DBException {
+        if (left == null || right == null) {
+            throw new DBException("One or more of the nodes is NULL. Unable to operate on NULL nodes");
+        }
+        if (!right.getClass().equals(left.getClass())) {
+            throw new DBException("Operand types must match in order to do arithmetic operation");
+        }
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return switch (op) {
+                case '+' -> a + b;
+                case '-' -> a - b;
+                case '*' -> a * b;
+                default -> {
+                    if (b == 0) throw new DBException("Division by 0 is not allowed");
+                    yield a / b;
+                }
+            };
+        }
+        if (left instanceof Double a && right instanceof Double b) {
+            return switch (op) {
+                case '+' -> a + b;
+                case '-' -> a - b;
+                case '*' -> a * b;
+                default -> {
+                    if (b == 0.0) throw new DBException("Division by 0 is not allowed");
+                    yield a / b;
+                }
+            };
+        }
+        throw new DBException("Only operations on types Integer and Double are permitted");
+    }
+
+    private static int intAt(Record record, int i) throws DBException {
+        Object raw = record.getValue(i).getRaw();
+        if (raw == null) {
+            throw new DBException("NULL values can not be evaluated");
+        }
+        if (!(raw instanceof Integer value)) {
+            throw new DBException("Left node and right node are not of the same type");
+        }
+        return value;
+    }
+
+    private static double doubleAt(Record record, int i) throws DBException {
+        Object raw = record.getValue(i).getRaw();
+        if (raw == null) {
+            throw new DBException("NULL values can not be evaluated");
+        }
+        if (!(raw instanceof Double value)) {
+            throw new DBException("Left node and right node are not of the same type");
+        }
+        return value;
+    }
+
+    // the checks RelopNode makes before comparing
+    private static void check(Object left, Object right) throws DBException {
+        if (left == null || right == null) {
+            throw new DBException("NULL values can not be evaluated");
+        }
+        if (left.getClass() != right.getClass()) {
+            throw new DBException("Left node and right node are not of the same type");
+        }
+    }
+
+    @FunctionalInterface
+    private interface Sign {
+        boolean holds(int comparison);
+    }
+
+    private static Sign sign(String op) {
+        return switch (op) {
+            case "==" -> c -> c == 0;
+            case "<>" -> c -> c != 0;
+            case "<" -> c -> c < 0;
+            case ">" -> c -> c > 0;
+            case "<=" -> c -> c <= 0;
+            default -> c -> c >= 0;
+        };
+    }
+
+    // a op b is the same as b mirror(op) a
+    private static String mirror(String op) {
+        return switch (op) {
+            case "<" -> ">";
+            case ">" -> "<";
+            case "<=" -> ">=";
+            case ">=" -> "<=";
+            default -> op;
+        };
+    }
+
+    // a comparison or IS NULL with its closure for evaluate() and its kernel for
+    // select(); only reached through a CompiledWhere, so always with its schema
+    private static final class Leaf implements IWhereTree {
+        private final IWhereTree node;
+        private final Test test;
+        private final Kernel kernel;
+
+        Leaf(IWhereTree node, Test test, Kernel kernel) {
+            this.node = node;
+            this.test = test;
+            this.kernel = kernel;
+        }
+
+        @Override
+        public boolean evaluate(Schema scheme, Record record) throws DBException {
+            return test.test(record);
+        }
+
+        @Override
+        public int select(Schema scheme, List<Record> records, int[] sel, int n) throws DBException {
+            return kernel.select(records, sel, n);
+        }
+
+        @Override
+        public String toString() {
+            return node.toString();
+        }
+    }
+}
@@ -5,7 +5,22 @@ import util.DBException;
 import model.Record;
 import model.Schema;
 
+import java.util.List;
+
 public interface IOperandNode {
     Value getVal(Schema scheme, Record record) throws DBException;
 
+    /**
+     * Batch form of getVal(), for IWhereTree.select()
+     * @param sel positions in records of the records wanted
+     * @param n number of entries of sel in use
+     * @return the raw value for record sel[i] at position i
+     */
+    default Object[] getRaws(Schema scheme, List<Record> records, int[] sel, int n) throws DBException {
+        Object[] raws = new Object[n];
+        for (int i = 0; i < n; i++) {
+            raws[i] = getVal(scheme, records.get(sel[i])).getRaw();
+        }
+        return raws;
+    }
 }
@@ -3,6 +3,8 @@ import model.*;
 import model.Record;
 import util.DBException;
 import util.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -133,6 +135,57 @@ public interface IWhereTree {
         return (IWhereTree) valueStack.pop();
     }
 
+    /**
+     * Collects every attribute a WHERE tree refers to
+     * @param tree the tree, may be null
+     * @return the AttrNodes of the tree, in no particular order
+     */
+    static List<AttrNode> attributeNodes(IWhereTree tree) {
+        List<AttrNode> found = new ArrayList<>();
+        collectAttributes(tree, found);
+        return found;
+    }
+
+    /**
+     * Splits a WHERE tree on its top level ANDs
+     * @param tree the tree, may be null
+     * @return the conditions that all have to hold for the tree to, left to right
+     */
+    static List<IWhereTree> conjuncts(IWhereTree tree) {
+        List<IWhereTree> found = new ArrayList<>();
+        collectConjuncts(tree, found);
+        return found;
+    }
+
+    private static void collectConjuncts(IWhereTree node, List<IWhereTree> found) {
+        if (node instanceof ANDTree and) {
+            collectConjuncts(and.getLeft(), found);
+            collectConjuncts(and.getRight(), found);
+        } else if (node != null) {
+            found.add(node);
+        }
+    }
+
+    private static void collectAttributes(Object node, List<AttrNode> found) {
+        if (node instanceof ANDTree and) {
+            collectAttributes(and.getLeft(), found);
+            collectAttributes(and.getRight(), found);
+        } else if (node instanceof ORTree or) {
+            collectAttributes(or.getLeft(), found);
+            collectAttributes(or.getRight(), found);
+        } else if (node instanceof RelopNode relop) {
+            collectAttributes(relop.getLeft(), found);
+            collectAttributes(relop.getRight(), found);
+        } else if (node instanceof isNULLNode isNull) {
+            collectAttributes(isNull.getOperand(), found);
+        } else if (node instanceof arithmeticNode arith) {
+            collectAttributes(arith.getLeft(), found);
+            collectAttributes(arith.getRight(), found);
+        } else if (node instanceof AttrNode attr) {
+            found.add(attr);
+        }
+    }
+
     /**
      * Helper function for createWhereTree. Creates a node, popping subnodes off of the value stack,
      * and puts the created node onto the value stack
@@ -345,4 +398,28 @@ public interface IWhereTree {
      */
     boolean evaluate(Schema scheme, Record record) throws DBException;
 
+    /**
+     * Checks the tree against a batch of records at once. The records still
+     * in the running are named by a selection vector of their positions, and
+     * the vector is narrowed in place to the ones that satisfy the tree, so
+     * later checks only look at what is left.
+     * <br>
+     * Nodes that can work a column at a time override this. Any other node
+     * is checked a record at a time through evaluate().
+     * @param records the batch
+     * @param sel positions in records of the ones to check, in increasing order;
+     *            on return its first entries are the positions of the ones that satisfy the tree
+     * @param n number of entries of sel in use
+     * @return number of entries of sel in use afterwards
+     */
+    default int select(Schema scheme, List<Record> records, int[] sel, int n) throws DBException {
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (evaluate(scheme, records.get(sel[i]))) {
+                sel[kept++] = sel[i];
+            }
+        }
+        return kept;
+    }
+
 }
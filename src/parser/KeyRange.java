@@ -0,0 +1,205 @@
+package parser;
+
+import model.Attribute;
+import model.Schema;
+import model.Value;
+
+/**
+ * The values a WHERE clause allows for one attribute, worked out from the
+ * comparisons against constants that are ANDed together at the top of the tree.
+ * Anything under an OR, and any comparison it can't read, is left alone, so the
+ * range may be wider than what the clause really matches but never narrower.
+ * A null bound means the range is open on that side.
+ */
+public class KeyRange {
+
+    private Value low;
+    private boolean lowInclusive = true;
+    private Value high;
+    private boolean highInclusive = true;
+    private boolean empty;
+
+    private KeyRange() {}
+
+    /**
+     * @param tree the WHERE tree, may be null
+     * @param schema schema the tree is evaluated against
+     * @param attrIndex the attribute to find the range of
+     * @return the range of values the tree allows for the attribute
+     */
+    public static KeyRange of(IWhereTree tree, Schema schema, int attrIndex) {
+        KeyRange range = new KeyRange();
+        if (tree != null) {
+            range.narrow(tree, schema, attrIndex);
+        }
+        return range;
+    }
+
+    /**
+     * @return true if the clause puts no bound on the attribute at all
+     */
+    public boolean isUnbounded() {
+        return !empty && low == null && high == null;
+    }
+
+    /**
+     * @return true if no value can satisfy the clause, like a > 5 AND a < 3
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return true if the clause pins the attribute to a single value, like a == 5
+     */
+    public boolean isPoint() {
+        return !empty && low != null && high != null && lowInclusive && highInclusive
+                && Value.compareRaw(low.getRaw(), high.getRaw()) == 0;
+    }
+
+    public Value getLow() {
+        return low;
+    }
+
+    public boolean isLowInclusive() {
+        return lowInclusive;
+    }
+
+    public Value getHigh() {
+        return high;
+    }
+
+    public boolean isHighInclusive() {
+        return highInclusive;
+    }
+
+    /**
+     * @return true if the value lies inside the range
+     */
+    public boolean contains(Object raw) {
+        if (empty) return false;
+        if (low != null) {
+            int c = Value.compareRaw(raw, low.getRaw());
+            if (c < 0 || (c == 0 && !lowInclusive)) return false;
+        }
+        if (high != null) {
+            int c = Value.compareRaw(raw, high.getRaw());
+            if (c > 0 || (c == 0 && !highInclusive)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param min smallest value present
+     * @param max largest value present
+     * @return true if some value between min and max, inclusive, could lie inside the range
+     */
+    public boolean overlaps(Object min, Object max) {
+        if (empty) return false;
+        if (low != null) {
+            int c = Value.compareRaw(max, low.getRaw());
+            if (c < 0 || (c == 0 && !lowInclusive)) return false;
+        }
+        if (high != null) {
+            int c = Value.compareRaw(min, high.getRaw());
+            if (c > 0 || (c == 0 && !highInclusive)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the range in interval notation, like [3, 9) or (-inf, 5]
+     */
+    @Override
+    public String toString() {
+        if (empty) return "empty";
+        String from = (low == null) ? "(-inf" : (lowInclusive ? "[" : "(") + low;
+        String to = (high == null) ? "+inf)" : high + (highInclusive ? "]" : ")");
+        return from + ", " + to;
+    }
+
+    private void narrow(IWhereTree tree, Schema schema, int attrIndex) {
+        if (tree instanceof ANDTree and) {
+            narrow(and.getLeft(), schema, attrIndex);
+            narrow(and.getRight(), schema, attrIndex);
+            return;
+        }
+        if (!(tree instanceof RelopNode relop)) return;
+
+        String op = relop.getOperator();
+        Value constant;
+        if (relop.getLeft() instanceof AttrNode attr && relop.getRight() instanceof ValueNode v
+                && attr.getIndex(schema) == attrIndex) {
+            constant = v.value;
+        } else if (relop.getRight() instanceof AttrNode attr && relop.getLeft() instanceof ValueNode v
+                && attr.getIndex(schema) == attrIndex) {
+            // c < a is a > c
+            constant = v.value;
+            op = flip(op);
+        } else {
+            return;
+        }
+
+        // a constant of the wrong type makes evaluate() throw, leave that to it
+        if (!matchesType(schema.getAttributes().get(attrIndex), constant.getRaw())) return;
+
+        switch (op) {
+            case "==" -> {
+                raiseLow(constant, true);
+                lowerHigh(constant, true);
+            }
+            case ">" -> raiseLow(constant, false);
+            case ">=" -> raiseLow(constant, true);
+            case "<" -> lowerHigh(constant, false);
+            case "<=" -> lowerHigh(constant, true);
+            default -> { } // <> doesn't bound anything
+        }
+
+        if (low != null && high != null) {
+            int c = Value.compareRaw(low.getRaw(), high.getRaw());
+            if (c > 0 || (c == 0 && !(lowInclusive && highInclusive))) {
+                empty = true;
+            }
+        }
+    }
+
+    private void raiseLow(Value v, boolean inclusive) {
+        int c = (low == null) ? 1 : Value.compareRaw(v.getRaw(), low.getRaw());
+        if (c > 0) {
+            low = v;
+            lowInclusive = inclusive;
+        } else if (c == 0) {
+            lowInclusive = lowInclusive && inclusive;
+        }
+    }
+
+    private void lowerHigh(Value v, boolean inclusive) {
+        int c = (high == null) ? -1 : Value.compareRaw(v.getRaw(), high.getRaw());
+        if (c < 0) {
+            high = v;
+            highInclusive = inclusive;
+        } else if (c == 0) {
+            highInclusive = highInclusive && inclusive;
+        }
+    }
+
+    private static String flip(String op) {
+        return switch (op) {
+            case "<" -> ">";
+            case "<=" -> ">=";
+            case ">" -> "<";
+            case ">=" -> "<=";
+            default -> op;
+        };
+    }
+
+    private static boolean matchesType(Attribute attr, Object raw) {
+        if (raw == null) return false;
+        return switch (attr.getType()) {
+            case INTEGER -> raw instanceof Integer;
+            case DOUBLE -> raw instanceof Double;
+            case BOOLEAN -> raw instanceof Boolean;
+            case CHAR, VARCHAR -> raw instanceof String;
+        };
+    }
+}
@@ -4,6 +4,9 @@ import model.Record;
 import model.Schema;
 import util.DBException;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class ORTree implements IWhereTree{
     private IWhereTree leftN;
     private IWhereTree rightN;
@@ -13,8 +16,53 @@ public class ORTree implements IWhereTree{
         this.rightN = rightN;
     }
 
+    public IWhereTree getLeft() {
+        return leftN;
+    }
+
+    public IWhereTree getRight() {
+        return rightN;
+    }
+
     @Override
     public boolean evaluate(Schema scheme, Record record) throws DBException {
         return rightN.evaluate(scheme, record) || leftN.evaluate(scheme, record);
     }
+
+    /**
+     * Like evaluate(), checks the right side first. The left side only sees
+     * what the right side turned down, and the two sets of survivors are
+     * merged back in order
+     */
+    @Override
+    public int select(Schema scheme, List<Record> records, int[] sel, int n) throws DBException {
+        int[] all = Arrays.copyOf(sel, n);
+        int right = rightN.select(scheme, records, sel, n);
+        if (right == n) return n;
+
+        int[] rest = new int[n - right];
+        int restCount = 0;
+        for (int i = 0, j = 0; i < n; i++) {
+            if (j < right && sel[j] == all[i]) {
+                j++;
+            } else {
+                rest[restCount++] = all[i];
+            }
+        }
+        int left = leftN.select(scheme, records, rest, restCount);
+
+        // merge from the back so sel's own survivors aren't overwritten before they are placed
+        int i = right - 1;
+        int j = left - 1;
+        for (int k = right + left - 1; k >= 0; k--) {
+            sel[k] = (j < 0 || (i >= 0 && sel[i] > rest[j])) ? sel[i--] : rest[j--];
+        }
+        return right + left;
+    }
+
+    // parenthesised, AND binds tighter
+    @Override
+    public String toString() {
+        return "(" + leftN + " OR " + rightN + ")";
+    }
 }
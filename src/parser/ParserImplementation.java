@@ -1,5 +1,6 @@
 package parser;
 
+import index.SecondaryIndex;
 import model.*;
 import util.DBException;
 import util.ParseException;
@@ -38,6 +39,9 @@ public class ParserImplementation implements Parser
                 case "ALTER" -> parseAlter(input);
                 case "DELETE" -> parseDelete(input);
                 case "UPDATE" -> parseUpdate(input);
+                case "VACUUM" -> parseVacuum(input);
+                case "ANALYZE" -> parseAnalyze(input);
+                case "EXPLAIN" -> parseExplain(input);
                 default -> throw new ParseException("Invalid command");
             };
         }
@@ -68,18 +72,26 @@ public class ParserImplementation implements Parser
 
     private ParsedCommand parseCreate(String input) throws ParseException {
 
-        //Check for "CREATE TABLE <tableName> (<something>);
-        Pattern pattern = Pattern.compile("CREATE TABLE (\\w+) *\\((.*)\\);");
+        if (input.startsWith("CREATE INDEX")) {
+            return parseCreateIndex(input);
+        }
+
+        //Check for "CREATE TABLE <tableName> (<something>) [FILLFACTOR <percent>] [MERGETHRESHOLD <percent>];
+        Pattern pattern = Pattern.compile("CREATE TABLE (\\w+) *\\((.*)\\)(?: FILLFACTOR (\\d{1,3}))?(?: MERGETHRESHOLD (\\d{1,3}))?;");
         Matcher matcher = pattern.matcher(input);
 
         //extract tableName
         String tableName;
         String attributesString;
+        int fillFactor;
+        int mergeThreshold;
 
         if (matcher.matches()) {
 
             tableName = matcher.group(1).toLowerCase();
             attributesString = matcher.group(2);
+            fillFactor = (matcher.group(3) == null) ? TableSchema.DEFAULT_FILL_FACTOR : Integer.parseInt(matcher.group(3));
+            mergeThreshold = (matcher.group(4) == null) ? TableSchema.DEFAULT_MERGE_THRESHOLD : Integer.parseInt(matcher.group(4));
 
             if (!isAlphanumeric(tableName)) {
                 throw new ParseException("Table name \"" + tableName + "\" composed of non-alphanumeric characters");
@@ -226,16 +238,41 @@ public class ParserImplementation implements Parser
             attributeArray[i] = (Attribute) attributeArrayAsObject[i];
         }
 
-        return new CreateTableCommand(tableName, attributeArray);
+        return new CreateTableCommand(tableName, attributeArray, fillFactor, mergeThreshold);
+
+    }
+
+    private ParsedCommand parseCreateIndex(String input) throws ParseException {
+
+        //Check for "CREATE INDEX <indexName> ON <tableName>(<attributeName>) [USING <type>];"
+        Matcher matcher = Pattern.compile("CREATE INDEX (\\w+) ON (\\w+) *\\( *(\\w+) *\\)(?: USING (\\w+))?;").matcher(input);
+
+        if (!matcher.matches()) {
+            throw new ParseException("Invalid CREATE INDEX syntax");
+        }
+
+        String indexName = matcher.group(1).toLowerCase();
+        String tableName = matcher.group(2).toLowerCase();
+        String attributeName = matcher.group(3).toLowerCase();
+        // a B+tree unless another kind is asked for
+        String indexType = (matcher.group(4) == null) ? SecondaryIndex.BTREE : matcher.group(4).toUpperCase();
+
+        for (String name : new String[]{indexName, tableName, attributeName}) {
+            if (!isAlphanumeric(name)) {
+                throw new ParseException("Name \"" + name + "\" composed of non-alphanumeric characters");
+            }
+        }
 
+        return new CreateIndexCommand(indexName, tableName, attributeName, indexType);
     }
 
     private ParsedCommand parseSelect(String input) throws ParseException {
         Matcher matcher = Pattern.compile("SELECT (?<attributes>(?:(?:\\w+\\.)?\\w+, )*(?:\\w+\\.)?\\w+|\\*)" +
                 " FROM (?<tables>(?:\\w+, )*\\w+)" +
-                "(?: WHERE (?<where>(?:(?!ORDERBY )(?:(?:\\w+\\.)?\\w+|=|>|>=|<|<=|==|<>|AND|OR|IS NULL) )*" +
-                "(?!ORDERBY)(?:(?:\\w+\\.)?\\w+|=|>|>=|<|<=|==|<>|AND|OR|IS|NULL)))?" +
-                "(?: ORDERBY (?<orderBy>(?:\\w+\\.)?\\w+))?;").matcher(input);
+                "(?: WHERE (?<where>(?:(?!ORDERBY |LIMIT )(?:(?:\\w+\\.)?\\w+|\"[^\" ]*\"|=|>|>=|<|<=|==|<>|AND|OR|IS NULL) )*" +
+                "(?!ORDERBY|LIMIT)(?:(?:\\w+\\.)?\\w+|\"[^\" ]*\"|=|>|>=|<|<=|==|<>|AND|OR|IS|NULL)))?" +
+                "(?: ORDERBY (?<orderBy>(?:\\w+\\.)?\\w+))?" +
+                "(?: LIMIT (?<limit>\\d+)(?: OFFSET (?<offset>\\d+))?)?;").matcher(input);
 
         if (matcher.matches()) {
             Pattern qualifiedPattern = Pattern.compile("(?<table>\\w+\\.)(?<attribute>\\w+)");
@@ -300,7 +337,21 @@ public class ParserImplementation implements Parser
                 attributeNameArray = attributeNames.toArray(new String[0][]);
             }
 
-            return new SelectCommand(tableNames, attributeNameArray, whereTree, orderBy);
+            //parse limit and offset
+            int limit = -1;
+            int offset = 0;
+            try {
+                if (matcher.group("limit") != null) {
+                    limit = Integer.parseInt(matcher.group("limit"));
+                }
+                if (matcher.group("offset") != null) {
+                    offset = Integer.parseInt(matcher.group("offset"));
+                }
+            } catch (NumberFormatException e) {
+                throw new ParseException("LIMIT and OFFSET must fit in an integer");
+            }
+
+            return new SelectCommand(tableNames, attributeNameArray, whereTree, orderBy, limit, offset);
         } else {
             throw new ParseException("Invalid command syntax.");
         }
@@ -458,6 +509,53 @@ public class ParserImplementation implements Parser
         return new DropTableCommand(tableName);
     }
 
+    private ParsedCommand parseVacuum(String input) throws ParseException
+    {
+        //Check for "VACUUM <tableName>;"
+        Matcher matcher = Pattern.compile("VACUUM (\\w+);").matcher(input);
+
+        if (!matcher.matches()) {
+            throw new ParseException("Invalid VACUUM syntax");
+        }
+
+        String tableName = matcher.group(1).toLowerCase();
+        if (!isAlphanumeric(tableName)) {
+            throw new ParseException("Table name \"" + tableName + "\" composed of non-alphanumeric characters");
+        }
+
+        return new VacuumCommand(tableName);
+    }
+
+    private ParsedCommand parseAnalyze(String input) throws ParseException
+    {
+        //Check for "ANALYZE <tableName>;"
+        Matcher matcher = Pattern.compile("ANALYZE (\\w+);").matcher(input);
+
+        if (!matcher.matches()) {
+            throw new ParseException("Invalid ANALYZE syntax");
+        }
+
+        String tableName = matcher.group(1).toLowerCase();
+        if (!isAlphanumeric(tableName)) {
+            throw new ParseException("Table name \"" + tableName + "\" composed of non-alphanumeric characters");
+        }
+
+        return new AnalyzeCommand(tableName);
+    }
+
+    private ParsedCommand parseExplain(String input) throws ParseException
+    {
+        //Check for "EXPLAIN [ANALYZE] <select>"
+        Matcher matcher = Pattern.compile("EXPLAIN (ANALYZE )?(SELECT .*)").matcher(input);
+
+        if (!matcher.matches()) {
+            throw new ParseException("Invalid EXPLAIN syntax");
+        }
+
+        SelectCommand select = (SelectCommand) parseSelect(matcher.group(2));
+        return new ExplainCommand(select, matcher.group(1) != null);
+    }
+
     private ParsedCommand parseAlter(String input) throws ParseException
     {
 
@@ -5,7 +5,13 @@ import model.Schema;
 import model.Value;
 import util.DBException;
 
+import java.util.List;
+
 public class RelopNode implements IWhereTree{
+    // positions are the operator codes select() switches on
+    private static final List<String> OPERATORS = List.of("==", "<>", "<", ">", "<=", ">=");
+    private static final int EQ = 0, NE = 1, LT = 2, GT = 3, LE = 4, GE = 5;
+
     private IOperandNode left;
     private IOperandNode right;
     private String operator;
@@ -17,6 +23,18 @@ public class RelopNode implements IWhereTree{
         this.operator = operator;
     }
 
+    public IOperandNode getLeft() {
+        return left;
+    }
+
+    public IOperandNode getRight() {
+        return right;
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
     @SuppressWarnings("all")
     @Override
     public boolean evaluate(Schema scheme, Record record) throws DBException {
@@ -56,4 +74,142 @@ public class RelopNode implements IWhereTree{
             throw new DBException("Operator provided is invalid:" + operator);
         }
     }
+
+    /**
+     * Gathers both sides a column at a time and compares them in one pass, so
+     * the operator is only looked at once per batch. A column compared with
+     * a number is unboxed first and compared in a loop over primitives.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public int select(Schema scheme, List<Record> records, int[] sel, int n) throws DBException {
+        int op = operatorCode(operator);
+        if (op == -1) {
+            // evaluate() reports it, after the checks it makes first
+            return IWhereTree.super.select(scheme, records, sel, n);
+        }
+        if (n == 0) return 0;
+        if (right instanceof ValueNode constant) {
+            return selectAgainst(left.getRaws(scheme, records, sel, n), op, constant.value.getRaw(), sel, n);
+        }
+        if (left instanceof ValueNode constant) {
+            return selectAgainst(right.getRaws(scheme, records, sel, n), mirror(op), constant.value.getRaw(), sel, n);
+        }
+        Object[] leftRaws = left.getRaws(scheme, records, sel, n);
+        Object[] rightRaws = right.getRaws(scheme, records, sel, n);
+        int[] comparison = new int[n];
+        for (int i = 0; i < n; i++) {
+            checkComparable(leftRaws[i], rightRaws[i]);
+            comparison[i] = ((Comparable<Object>) leftRaws[i]).compareTo(rightRaws[i]);
+        }
+        int kept = 0;
+        switch (op) {
+            case EQ -> { for (int i = 0; i < n; i++) if (comparison[i] == 0) sel[kept++] = sel[i]; }
+            case NE -> { for (int i = 0; i < n; i++) if (comparison[i] != 0) sel[kept++] = sel[i]; }
+            case LT -> { for (int i = 0; i < n; i++) if (comparison[i] < 0) sel[kept++] = sel[i]; }
+            case GT -> { for (int i = 0; i < n; i++) if (comparison[i] > 0) sel[kept++] = sel[i]; }
+            case LE -> { for (int i = 0; i < n; i++) if (comparison[i] <= 0) sel[kept++] = sel[i]; }
+            default -> { for (int i = 0; i < n; i++) if (comparison[i] >= 0) sel[kept++] = sel[i]; }
+        }
+        return kept;
+    }
+
+    /**
+     * @return the operator's code for selectAgainst(), or -1 if it isn't a comparison
+     */
+    static int operatorCode(String operator) {
+        return OPERATORS.indexOf(operator);
+    }
+
+    // a op b is the same as b mirror(op) a
+    static int mirror(int op) {
+        return switch (op) {
+            case LT -> GT;
+            case GT -> LT;
+            case LE -> GE;
+            case GE -> LE;
+            default -> op;
+        };
+    }
+
+    /**
+     * Narrows sel to the records whose column value stands in relation op to a
+     * constant. A number constant has the column unboxed into a primitive array
+     * and compared with the operator picked once, outside the loop.
+     * @param raws the column, raws[i] for record sel[i]
+     * @param op an operator code, with the column on the left
+     * @return the number of entries of sel kept
+     * @throws DBException the error evaluate() gives, for the first value it would fail on
+     */
+    @SuppressWarnings("unchecked")
+    static int selectAgainst(Object[] raws, int op, Object constant, int[] sel, int n) throws DBException {
+        int kept = 0;
+        if (constant instanceof Integer c) {
+            int[] v = new int[n];
+            for (int i = 0; i < n; i++) {
+                checkComparable(raws[i], constant);
+                v[i] = (Integer) raws[i];
+            }
+            int k = c;
+            switch (op) {
+                case EQ -> { for (int i = 0; i < n; i++) if (v[i] == k) sel[kept++] = sel[i]; }
+                case NE -> { for (int i = 0; i < n; i++) if (v[i] != k) sel[kept++] = sel[i]; }
+                case LT -> { for (int i = 0; i < n; i++) if (v[i] < k) sel[kept++] = sel[i]; }
+                case GT -> { for (int i = 0; i < n; i++) if (v[i] > k) sel[kept++] = sel[i]; }
+                case LE -> { for (int i = 0; i < n; i++) if (v[i] <= k) sel[kept++] = sel[i]; }
+                default -> { for (int i = 0; i < n; i++) if (v[i] >= k) sel[kept++] = sel[i]; }
+            }
+            return kept;
+        }
+        if (constant instanceof Double c) {
+            // Double.compare, not the primitive operators, so NaN and -0.0 order as compareTo does
+            double[] v = new double[n];
+            for (int i = 0; i < n; i++) {
+                checkComparable(raws[i], constant);
+                v[i] = (Double) raws[i];
+            }
+            double k = c;
+            switch (op) {
+                case EQ -> { for (int i = 0; i < n; i++) if (Double.compare(v[i], k) == 0) sel[kept++] = sel[i]; }
+                case NE -> { for (int i = 0; i < n; i++) if (Double.compare(v[i], k) != 0) sel[kept++] = sel[i]; }
+                case LT -> { for (int i = 0; i < n; i++) if (Double.compare(v[i], k) < 0) sel[kept++] = sel[i]; }
+                case GT -> { for (int i = 0; i < n; i++) if (Double.compare(v[i], k) > 0) sel[kept++] = sel[i]; }
+                case LE -> { for (int i = 0; i < n; i++) if (Double.compare(v[i], k) <= 0) sel[kept++] = sel[i]; }
+                default -> { for (int i = 0; i < n; i++) if (Double.compare(v[i], k) >= 0) sel[kept++] = sel[i]; }
+            }
+            return kept;
+        }
+        int[] comparison = new int[n];
+        for (int i = 0; i < n; i++) {
+            checkComparable(raws[i], constant);
+            comparison[i] = ((Comparable<Object>) raws[i]).compareTo(constant);
+        }
+        for (int i = 0; i < n; i++) {
+            boolean holds = switch (op) {
+                case EQ -> comparison[i] == 0;
+                case NE -> comparison[i] != 0;
+                case LT -> comparison[i] < 0;
+                case GT -> comparison[i] > 0;
+                case LE -> comparison[i] <= 0;
+                default -> comparison[i] >= 0;
+            };
+            if (holds) sel[kept++] = sel[i];
+        }
+        return kept;
+    }
+
+    // the same checks evaluate() makes before comparing
+    private static void checkComparable(Object left, Object right) throws DBException {
+        if (left == null || right == null) {
+            throw new DBException("NULL values can not be evaluated");
+        }
+        if (left.getClass() != right.getClass()) {
+            throw new DBException("Left node and right node are not of the same type");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return left + " " + operator + " " + right;
+    }
 }
@@ -17,4 +17,10 @@ public class ValueNode implements IOperandNode{
     public Value getVal(Schema scheme, Record record) throws DBException {
         return value;
     }
-}
\ No newline at end of file
+
+    // strings quoted the way they are written in a WHERE clause
+    @Override
+    public String toString() {
+        return (value.getRaw() instanceof String s) ? "\"" + s + "\"" : value.toString();
+    }
+}
@@ -17,6 +17,18 @@ public class arithmeticNode implements IOperandNode{
         this.arithmeticOperation = arithmeticOperation;
     }
 
+    public IOperandNode getLeft() {
+        return leftNode;
+    }
+
+    public IOperandNode getRight() {
+        return rightNode;
+    }
+
+    public String getOperation() {
+        return arithmeticOperation;
+    }
+
     @Override
     public Value getVal(Schema scheme, Record record) throws DBException {
 //      TODO: Check if null
@@ -75,4 +87,9 @@ public class arithmeticNode implements IOperandNode{
         }
         throw new DBException("Only operations on types Integer and Double are permitted");
     }
+
+    @Override
+    public String toString() {
+        return leftNode + " " + arithmeticOperation + " " + rightNode;
+    }
 }
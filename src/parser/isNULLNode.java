@@ -4,6 +4,8 @@ import model.Record;
 import model.Schema;
 import util.DBException;
 
+import java.util.List;
+
 public class isNULLNode implements IWhereTree{
     private IOperandNode node;
 
@@ -12,8 +14,29 @@ public class isNULLNode implements IWhereTree{
     }
 
 
+    public IOperandNode getOperand() {
+        return node;
+    }
+
     @Override
     public boolean evaluate(Schema scheme, Record record) throws DBException {
         return ((node.getVal(scheme, record)).getRaw() == null);
     }
+
+    @Override
+    public int select(Schema scheme, List<Record> records, int[] sel, int n) throws DBException {
+        Object[] raws = node.getRaws(scheme, records, sel, n);
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (raws[i] == null) {
+                sel[kept++] = sel[i];
+            }
+        }
+        return kept;
+    }
+
+    @Override
+    public String toString() {
+        return node + " IS NULL";
+    }
 }
@@ -119,6 +119,47 @@ public class FileStorageManager implements StorageManager {
         }
     }
 
+    @Override
+    public int[] allocatePages(int count) throws DBException {
+        int[] pageIds = new int[count];
+        int n = 0;
+
+        // reuse freed pages first, clearing stale data like allocatePage does
+        if (!freeList.isEmpty()) {
+            byte[] empty = new byte[pageSize];
+            try {
+                while (n < count && !freeList.isEmpty()) {
+                    int reused = freeList.pop();
+                    raf.seek((long) reused * pageSize);
+                    raf.write(empty);
+                    pageIds[n++] = reused;
+                }
+            } catch (IOException e) {
+                throw new DBException("Failed to clear reused page", e);
+            }
+            writeHeaderPage0();
+        }
+
+        // then extend the file once for the rest
+        if (n < count) {
+            try {
+                long length = raf.length();
+                if (length < pageSize) {
+                    length = pageSize;
+                }
+                int firstNew = (int) (length / pageSize);
+                raf.setLength(length + (long) (count - n) * pageSize);
+                for (int id = firstNew; n < count; id++) {
+                    pageIds[n++] = id;
+                }
+            } catch (IOException e) {
+                throw new DBException("Failed to allocate pages", e);
+            }
+        }
+
+        return pageIds;
+    }
+
     @Override
     public void freePage(int pageId) throws DBException {
         if (pageId <= 0) return;
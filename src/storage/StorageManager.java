@@ -14,6 +14,14 @@ public interface StorageManager {
 
     int allocatePage() throws DBException;
 
+    /**
+     * Allocates several pages at once, growing the file a single time for
+     * whatever the free list can't supply.
+     * @param count number of pages wanted
+     * @return the allocated pageIds
+     */
+    int[] allocatePages(int count) throws DBException;
+
     void freePage(int pageId) throws DBException;
 
     int getPageSize();
@@ -1,11 +1,25 @@
 package storage;
 
+import buffer.BufferManager;
+import catalog.FileCatalog;
+import model.Attribute;
+import model.Datatype;
+import model.Page;
+import model.Record;
+import model.Schema;
+import model.TableSchema;
+import model.Value;
 import util.DBException;
 
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 
 public class StorageSmokeTest {
-    public static void main(String[] args) throws DBException {
+    public static void main(String[] args) throws DBException, IOException {
         String dbFile = "database_test.db";
 
         StorageManager sm = new FileStorageManager();
@@ -28,5 +42,122 @@ public class StorageSmokeTest {
         System.out.println("Bytes match: " + Arrays.equals(data, read));
 
         sm2.close();
+
+        oldCatalog();
+        emptiedPage();
+    }
+
+    /**
+     * Reopens a table whose catalog was written before the catalog had a
+     * version: just the schema and pageIds, with pages of keys 1-3 and 4-6.
+     */
+    private static void oldCatalog() throws DBException, IOException {
+        String dbFile = "old_catalog_test.db";
+        new File(dbFile).delete();
+
+        StorageManager sm = new FileStorageManager();
+        sm.open(dbFile, 4096);
+        BufferManager buffer = new BufferManager();
+        buffer.initialize(4, sm.getPageSize(), sm);
+
+        int[] pids = {sm.allocatePage(), sm.allocatePage()};
+        for (int p = 0; p < pids.length; p++) {
+            Page page = buffer.newPage(pids[p]);
+            for (int k = 1; k <= 3; k++) {
+                Record r = new Record();
+                r.addAttribute(new Value(3 * p + k));
+                r.addAttribute(new Value("row" + (3 * p + k)));
+                page.addRecord(r);
+            }
+            buffer.markDirty(pids[p]);
+        }
+        buffer.flushAll();
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(dbFile + ".catalog"))) {
+            out.writeInt(1);
+            out.writeUTF("t");
+            out.writeInt(2);
+            out.writeUTF("id");
+            out.writeBoolean(true);
+            out.writeBoolean(true);
+            out.writeUTF(Datatype.INTEGER.name());
+            out.writeInt(-1);
+            out.writeUTF("name");
+            out.writeBoolean(false);
+            out.writeBoolean(false);
+            out.writeUTF(Datatype.VARCHAR.name());
+            out.writeInt(10);
+            out.writeInt(pids.length);
+            for (int pid : pids) out.writeInt(pid);
+        }
+
+        FileCatalog catalog = new FileCatalog(dbFile);
+        catalog.load();
+        TableSchema t = (TableSchema) catalog.getTable("t");
+        t.bind(sm, buffer);
+        t.rebuildPageSummaries();
+
+        System.out.println("Old catalog pages: " + t.getPageIds().size());
+        System.out.println("Fill factor: " + t.getFillFactor() + ", index root: " + t.getIndexRoot()
+                + ", indexes: " + t.getSecondaryIndexes().size() + ", stats: " + t.getStats());
+        System.out.println("Fences: " + t.getMinKeys().get(0).getRaw() + "-" + t.getMaxKeys().get(0).getRaw()
+                + ", " + t.getMinKeys().get(1).getRaw() + "-" + t.getMaxKeys().get(1).getRaw());
+        System.out.println("Zone maps: " + t.getZones().size());
+        System.out.println("Key 5 found: " + (t.findByKey(5) != null) + ", key 7 may exist: " + t.mayContainKey(7));
+
+        // saved again, the catalog gets a version and keeps the rebuilt fences
+        catalog.save();
+        catalog.load();
+        TableSchema reloaded = (TableSchema) catalog.getTable("t");
+        System.out.println("Reloaded fences: " + reloaded.getMinKeys().get(1).getRaw()
+                + "-" + reloaded.getMaxKeys().get(1).getRaw());
+
+        sm.close();
+    }
+
+    /**
+     * Moves every key off the middle one of three pages, leaving it empty
+     * between pages 1-4 and 9-12, then inserts 9 again. The fence search
+     * must step past the empty page to find the 9 already there.
+     */
+    private static void emptiedPage() throws DBException {
+        String dbFile = "empty_page_test.db";
+        new File(dbFile).delete();
+
+        StorageManager sm = new FileStorageManager();
+        sm.open(dbFile, 64);
+        BufferManager buffer = new BufferManager();
+        buffer.initialize(4, sm.getPageSize(), sm);
+
+        Schema schema = new Schema(List.of(new Attribute("id", true, true, Datatype.INTEGER)));
+        TableSchema t = new TableSchema("t", schema, sm, buffer);
+        for (int k = 1; k <= 12; k++) {
+            t.insert(row(k));
+        }
+        System.out.println("Pages before update: " + t.getPageIds().size());
+
+        for (int k = 5; k <= 8; k++) {
+            Record r = t.findByKey(k);
+            int pid = t.getPageIds().get(t.findPageIndex(k));
+            t.updateRecord(pid, r, 0, new Value(k + 95));
+        }
+        System.out.println("Pages after update: " + t.getPageIds().size()
+                + ", middle page empty: " + (t.getMaxKeys().get(1) == null));
+
+        try {
+            t.insert(row(9));
+            System.out.println("Duplicate 9 inserted: true");
+        } catch (DBException e) {
+            System.out.println("Duplicate 9 inserted: false (" + e.getMessage() + ")");
+        }
+        System.out.println("Bulk insert of 9 took: " + t.bulkInsert(List.of(row(9), row(50))) + " rows");
+
+        sm.close();
+    }
+
+    private static Record row(int id) {
+        Record r = new Record();
+        r.addAttribute(new Value(id));
+        return r;
     }
 }